@@ -4,14 +4,19 @@ import hudson.AbortException;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.model.AbstractDescribableImpl;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.DiskProber;
+import org.jenkinsci.plugins.ewm.services.SpaceReservationLedger;
+import org.jenkinsci.plugins.ewm.services.UsableSpaceSnapshot;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import javax.annotation.Nonnull;
-import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class for defining a disk allocation strategy.
@@ -19,13 +24,15 @@ import java.util.List;
  *
  * @author Alexandru Somai
  */
-public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<DiskAllocationStrategy> implements ExtensionPoint {
+public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<DiskAllocationStrategy> implements ExtensionPoint, Cloneable {
 
     private static final long MEGABYTE = 1024L * 1024L;
 
     // estimated workspace size has to be in MB
     private long estimatedWorkspaceSize;
 
+    private boolean forceFreshUsableSpace;
+
     /**
      * @return all registered {@link DiskAllocationStrategy}s.
      */
@@ -53,15 +60,32 @@ public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<Dis
     @Nonnull
     public abstract Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException;
 
+    /**
+     * Allocates a disk from the given list, on behalf of the given build.
+     * Override this method if the strategy needs the build context, e.g. to report its decision in the build log.
+     * By default, it delegates to {@link #allocateDisk(List)}.
+     *
+     * @param disks    the entries from which to allocate a disk. The list has at least one element
+     * @param run      the build that allocates the workspace
+     * @param listener the build's listener
+     * @return the selected disk
+     * @throws IOException same as {@link #allocateDisk(List)}
+     */
+    @Nonnull
+    public Disk allocateDisk(@Nonnull List<Disk> disks, @Nonnull Run<?, ?> run, @Nonnull TaskListener listener) throws IOException {
+        return allocateDisk(disks);
+    }
+
     /**
      * Retrieves the usable space in bytes for the given {@link Disk} entry.
      * It uses the mounting point property that is defined in the Jenkins global config for each Disk.
+     * The value is served from the {@link UsableSpaceSnapshot}, unless {@link #isForceFreshUsableSpace()} is set.
      *
      * @param disk the disk entry
      * @return the disk's usable space in bytes
      * @throws IOException if mounting point from Jenkins master to Disk is {@code null}, or
      *                     if the usable space can't be retrieved for security reasons
-     * @see File#getUsableSpace
+     * @see UsableSpaceSnapshot#getUsableSpace(String, boolean)
      */
     @Restricted(NoExternalUse.class)
     public long retrieveUsableSpaceInBytes(Disk disk) throws IOException {
@@ -72,7 +96,7 @@ public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<Dis
         }
 
         try {
-            return new File(masterMountPoint).getUsableSpace();
+            return UsableSpaceSnapshot.getUsableSpace(masterMountPoint, forceFreshUsableSpace);
         } catch (SecurityException e) {
             throw new AbortException(String.format("Can't retrieve usable space for Disk ID '%s' because of security reasons", disk.getDiskId()));
         }
@@ -93,6 +117,67 @@ public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<Dis
         return bytesToMega(retrieveUsableSpaceInBytes(disk));
     }
 
+    /**
+     * Retrieves the space in bytes that is still available for new workspaces on the given {@link Disk} entry.
+     * It subtracts the space reserved by the in-flight allocations, as tracked by {@link SpaceReservationLedger},
+     * from the value returned by {@link #retrieveUsableSpaceInBytes(Disk)}.
+     *
+     * @param disk the disk entry
+     * @return the disk's available space in bytes, never negative
+     * @throws IOException same as {@link #retrieveUsableSpaceInBytes(Disk)}
+     */
+    @Restricted(NoExternalUse.class)
+    protected final long retrieveAvailableSpaceInBytes(Disk disk) throws IOException {
+        long reserved = SpaceReservationLedger.getReservedBytes(disk);
+        return Math.max(0, retrieveUsableSpaceInBytes(disk) - reserved);
+    }
+
+    /**
+     * Retrieves the space in MB that is still available for new workspaces on the given {@link Disk} entry.
+     *
+     * @param disk the disk entry
+     * @return the disk's available space in MB
+     * @throws IOException same as {@link #retrieveUsableSpaceInBytes(Disk)}
+     * @see #retrieveAvailableSpaceInBytes(Disk)
+     */
+    @Restricted(NoExternalUse.class)
+    protected final long retrieveAvailableSpaceInMegaBytes(Disk disk) throws IOException {
+        return bytesToMega(retrieveAvailableSpaceInBytes(disk));
+    }
+
+    /**
+     * Tells whether the usable space of the given {@link Disk} entry is served from the {@link UsableSpaceSnapshot}
+     * without reading the file system, so the {@link DiskProber} can probe it on the calling thread.
+     *
+     * @param disk the disk entry
+     * @return {@code true} if probing the disk only reads in-memory state
+     */
+    @Restricted(NoExternalUse.class)
+    protected final boolean isUsableSpaceInMemory(@Nonnull Disk disk) {
+        String masterMountPoint = disk.getMasterMountPoint();
+        return !forceFreshUsableSpace && masterMountPoint != null && UsableSpaceSnapshot.isFresh(masterMountPoint);
+    }
+
+    /**
+     * Retrieves the available space in bytes of all the given {@link Disk} entries.
+     * The disks are probed in parallel by the {@link DiskProber}, so a hung disk can't block the allocation.
+     * The disks that are degraded, or that don't answer in time, are left out of the result.
+     *
+     * @param disks the disk entries
+     * @return the available space in bytes of each disk that answered in time, in the same order as the given disks
+     * @throws IOException same as {@link #retrieveUsableSpaceInBytes(Disk)}, or if none of the disks answered in time
+     * @see #retrieveAvailableSpaceInBytes(Disk)
+     */
+    @Restricted(NoExternalUse.class)
+    @Nonnull
+    protected final Map<Disk, Long> probeAvailableSpaceInBytes(@Nonnull List<Disk> disks) throws IOException {
+        Map<Disk, Long> availableSpace = DiskProber.probe(disks, this::retrieveAvailableSpaceInBytes, this::isUsableSpaceInMemory);
+        if (availableSpace.isEmpty() && !disks.isEmpty()) {
+            throw new AbortException("None of the Disks answered in time. They may be degraded, e.g. because of a hung mount point");
+        }
+        return availableSpace;
+    }
+
     /**
      * Converts the given bytes value to megabytes.
      * The formula used is bytes / (1024 * 1024).
@@ -100,10 +185,20 @@ public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<Dis
      * @param bytes the given value in bytes
      * @return the converted value to megabytes
      */
-    private static long bytesToMega(long bytes) {
+    protected static long bytesToMega(long bytes) {
         return bytes / MEGABYTE;
     }
 
+    /**
+     * Converts the given megabytes value to bytes.
+     *
+     * @param megaBytes the given value in megabytes
+     * @return the converted value to bytes
+     */
+    public static long megaToBytes(long megaBytes) {
+        return megaBytes * MEGABYTE;
+    }
+
     /**
      * Returns the estimated workspace size in MB.
      *
@@ -122,4 +217,41 @@ public abstract class DiskAllocationStrategy extends AbstractDescribableImpl<Dis
     public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
         this.estimatedWorkspaceSize = estimatedWorkspaceSize;
     }
+
+    /**
+     * Returns a copy of this strategy that uses the given estimated workspace size.
+     * The strategies defined in the Jenkins global config are shared by all the builds, so they must not be modified.
+     *
+     * @param estimatedWorkspaceSize the estimated workspace size in MB
+     * @return a shallow copy of this strategy, with the given estimated workspace size
+     */
+    @Nonnull
+    public DiskAllocationStrategy withEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        try {
+            DiskAllocationStrategy copy = (DiskAllocationStrategy) clone();
+            copy.estimatedWorkspaceSize = estimatedWorkspaceSize;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns whether the usable space should be read from the disks on each allocation,
+     * instead of being served from the {@link UsableSpaceSnapshot}.
+     *
+     * @return {@code true} if the usable space is always read from the disks
+     */
+    public boolean isForceFreshUsableSpace() {
+        return forceFreshUsableSpace;
+    }
+
+    /**
+     * Sets whether the usable space should be read from the disks on each allocation.
+     *
+     * @param forceFreshUsableSpace {@code true} to bypass the {@link UsableSpaceSnapshot}
+     */
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        this.forceFreshUsableSpace = forceFreshUsableSpace;
+    }
 }
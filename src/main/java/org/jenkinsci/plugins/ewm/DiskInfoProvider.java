@@ -51,4 +51,12 @@ public abstract class DiskInfoProvider extends AbstractDescribableImpl<DiskInfoP
     public int getWriteSpeed() {
         return writeSpeed;
     }
+
+    /**
+     * @return the latency of the file metadata operations (create, stat and unlink) on the disk, in milliseconds,
+     * or {@code 0} if it is unknown
+     */
+    public double getMetadataLatency() {
+        return 0;
+    }
 }
@@ -7,6 +7,8 @@ import hudson.model.RootAction;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.ewm.Messages;
 import org.jenkinsci.plugins.ewm.facets.WorkspaceBrowserFacet;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.services.WorkspaceRegistry;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -40,6 +42,10 @@ public class WorkspaceBrowserRootAction implements RootAction {
     /**
      * Method accessed by the Stapler framework when the following url is accessed:
      * <i>JENKINS_ROOT_URL/exws/browse/workspaceId/</i>
+     * <p>
+     * The workspace is looked up in the {@link WorkspaceRegistry}.
+     * A workspace missing from the registry is imported from its fingerprint, if there is one,
+     * unless the workspace was removed from the registry: its fingerprint may outlive it.
      *
      * @param workspaceId the workspace's unique id
      * @return the workspace whose id matches the given input id, or {@link NoFingerprintMatch} if fingerprint is not found
@@ -50,6 +56,15 @@ public class WorkspaceBrowserRootAction implements RootAction {
     @SuppressWarnings("unused")
     @Nonnull
     public Object getBrowse(String workspaceId) throws IOException {
+        WorkspaceRegistry registry = WorkspaceRegistry.get();
+        ExternalWorkspace exws = registry.getWorkspace(workspaceId);
+        if (exws != null) {
+            return exws;
+        }
+        if (registry.isRemoved(workspaceId)) {
+            return new NoFingerprintMatch(workspaceId);
+        }
+
         Fingerprint fingerprint = Jenkins.getActiveInstance()._getFingerprint(workspaceId);
         if (fingerprint == null) {
             return new NoFingerprintMatch(workspaceId);
@@ -7,9 +7,11 @@ import hudson.util.FormValidation;
 import org.jenkinsci.plugins.ewm.DiskInfoProvider;
 import org.jenkinsci.plugins.ewm.Messages;
 import org.jenkinsci.plugins.ewm.providers.NoDiskInfo;
+import org.jenkinsci.plugins.ewm.services.WorkspaceDeduplicator;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import javax.annotation.CheckForNull;
@@ -31,6 +33,9 @@ public class Disk implements Describable<Disk> {
     private final String masterMountPoint;
     private final String physicalPathOnDisk;
     private final DiskInfoProvider diskInfo;
+    private boolean deduplicate;
+    // set by the Disk Pool that holds this disk
+    private transient String diskPoolId;
 
     @DataBoundConstructor
     public Disk(String diskId, String displayName, String masterMountPoint,
@@ -42,6 +47,11 @@ public class Disk implements Describable<Disk> {
         this.diskInfo = diskInfo == null ? new NoDiskInfo() : diskInfo;
     }
 
+    @DataBoundSetter
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
     @Override
     public Descriptor<Disk> getDescriptor() {
         return DESCRIPTOR;
@@ -57,6 +67,19 @@ public class Disk implements Describable<Disk> {
         return displayName != null ? displayName : diskId;
     }
 
+    /**
+     * @return the ID of the {@link DiskPool} that holds this disk
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    public String getDiskPoolId() {
+        return diskPoolId;
+    }
+
+    void setDiskPoolId(@CheckForNull String diskPoolId) {
+        this.diskPoolId = diskPoolId;
+    }
+
     @CheckForNull
     public String getMasterMountPoint() {
         return masterMountPoint;
@@ -72,6 +95,14 @@ public class Disk implements Describable<Disk> {
         return diskInfo;
     }
 
+    /**
+     * @return whether the identical read-only files of this Disk's workspaces are replaced with hard links
+     * @see WorkspaceDeduplicator
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
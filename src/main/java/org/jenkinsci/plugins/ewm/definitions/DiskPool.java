@@ -12,6 +12,7 @@ import org.jenkinsci.plugins.ewm.utils.FormValidationUtil;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import javax.annotation.CheckForNull;
@@ -40,6 +41,7 @@ public class DiskPool implements Describable<DiskPool> {
     private final JobRestriction restriction;
     private final DiskAllocationStrategy strategy;
     private final List<Disk> disks;
+    private List<Quota> quotas;
 
     @DataBoundConstructor
     public DiskPool(String diskPoolId, String displayName, String description, String workspaceTemplate,
@@ -51,6 +53,16 @@ public class DiskPool implements Describable<DiskPool> {
         this.restriction = restriction == null ? JobRestriction.DEFAULT : restriction;
         this.strategy = strategy == null ? DEFAULT_DISK_ALLOCATION_STRATEGY : strategy;
         this.disks = fixNull(disks);
+        for (Disk disk : this.disks) {
+            disk.setDiskPoolId(this.diskPoolId);
+        }
+    }
+
+    protected Object readResolve() {
+        for (Disk disk : fixNull(disks)) {
+            disk.setDiskPoolId(diskPoolId);
+        }
+        return this;
     }
 
     @Override
@@ -93,6 +105,16 @@ public class DiskPool implements Describable<DiskPool> {
         return Collections.unmodifiableList(disks);
     }
 
+    @Nonnull
+    public List<Quota> getQuotas() {
+        return Collections.unmodifiableList(fixNull(quotas));
+    }
+
+    @DataBoundSetter
+    public void setQuotas(List<Quota> quotas) {
+        this.quotas = fixNull(quotas);
+    }
+
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
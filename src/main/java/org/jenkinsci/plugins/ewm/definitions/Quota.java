@@ -0,0 +1,80 @@
+package org.jenkinsci.plugins.ewm.definitions;
+
+import hudson.Extension;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import static hudson.Util.fixEmptyAndTrim;
+
+/**
+ * Describable used to limit the space that the workspaces of a job, or of the jobs within a folder,
+ * may use within a {@link DiskPool}.
+ */
+public class Quota implements Describable<Quota> {
+
+    private final String itemFullName;
+    private final long limit;
+
+    /**
+     * @param itemFullName the full name of the job or folder the quota applies to,
+     *                     or {@code null} for a quota that applies to all the jobs together
+     * @param limit        the maximum space, in MB
+     */
+    @DataBoundConstructor
+    public Quota(String itemFullName, long limit) {
+        this.itemFullName = fixEmptyAndTrim(itemFullName);
+        this.limit = limit;
+    }
+
+    @CheckForNull
+    public String getItemFullName() {
+        return itemFullName;
+    }
+
+    /**
+     * @return the maximum space, in MB
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param jobFullName the full name of a job
+     * @return {@code true} if this quota applies to the given job, i.e. it is the job itself or one of its folders
+     */
+    public boolean appliesTo(@Nonnull String jobFullName) {
+        return itemFullName == null || itemFullName.equals(jobFullName) || jobFullName.startsWith(itemFullName + '/');
+    }
+
+    @Override
+    public Descriptor<Quota> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    public static class DescriptorImpl extends Descriptor<Quota> {
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckLimit(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.definitions_Quota_DisplayName();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package org.jenkinsci.plugins.ewm.definitions;
 
+import antlr.ANTLRException;
 import hudson.Extension;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
+import hudson.model.Label;
+import hudson.model.Node;
 import hudson.util.FormValidation;
 import org.jenkinsci.plugins.ewm.Messages;
 import org.jenkinsci.plugins.ewm.nodes.NodeDiskPool;
@@ -15,6 +18,7 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static hudson.Util.fixEmptyAndTrim;
 import static hudson.Util.fixNull;
@@ -32,10 +36,22 @@ public class Template implements Describable<Template> {
     private final String label;
     private final List<NodeDiskPool> nodeDiskPools;
 
+    private transient Map<String, NodeDiskPool> nodeDiskPoolIndex;
+    // null if the label isn't a valid label expression
+    private transient Label labelExpression;
+
     @DataBoundConstructor
     public Template(String label, List<NodeDiskPool> nodeDiskPools) {
         this.label = fixEmptyAndTrim(label);
         this.nodeDiskPools = fixNull(nodeDiskPools);
+        this.nodeDiskPoolIndex = NodeDiskPool.indexNodeDiskPools(this.nodeDiskPools);
+        this.labelExpression = parseLabelExpression(this.label);
+    }
+
+    protected Object readResolve() {
+        nodeDiskPoolIndex = NodeDiskPool.indexNodeDiskPools(fixNull(nodeDiskPools));
+        labelExpression = parseLabelExpression(label);
+        return this;
     }
 
     @CheckForNull
@@ -48,6 +64,46 @@ public class Template implements Describable<Template> {
         return Collections.unmodifiableList(nodeDiskPools);
     }
 
+    /**
+     * @param diskPoolRefId the Disk Pool Ref ID
+     * @return the first node disk pool that has the given {@link NodeDiskPool#getDiskPoolRefId()}, {@code null} otherwise
+     */
+    @CheckForNull
+    public NodeDiskPool getNodeDiskPool(@CheckForNull String diskPoolRefId) {
+        return diskPoolRefId == null ? null : nodeDiskPoolIndex.get(diskPoolRefId);
+    }
+
+    /**
+     * Checks whether this template applies to the given node.
+     * The {@link #label} is evaluated as a label expression against the node's labels.
+     * If it isn't a valid label expression, it falls back to checking whether the node label string contains it,
+     * as the templates did before the label expressions were supported.
+     *
+     * @param node the node
+     * @return {@code true} if this template applies to the given node
+     */
+    public boolean matches(@Nonnull Node node) {
+        if (label == null) {
+            return false;
+        }
+        if (labelExpression != null) {
+            return labelExpression.matches(node);
+        }
+        return node.getLabelString().contains(label);
+    }
+
+    @CheckForNull
+    private static Label parseLabelExpression(@CheckForNull String label) {
+        if (label == null) {
+            return null;
+        }
+        try {
+            return Label.parseExpression(label);
+        } catch (ANTLRException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return DESCRIPTOR;
@@ -61,7 +117,14 @@ public class Template implements Describable<Template> {
         @Restricted(NoExternalUse.class)
         @SuppressWarnings("unused")
         public FormValidation doCheckLabel(@QueryParameter String value) {
-            return validateRequired(value);
+            FormValidation required = validateRequired(value);
+            if (required.kind != FormValidation.Kind.OK) {
+                return required;
+            }
+            if (parseLabelExpression(value.trim()) == null) {
+                return FormValidation.warning(Messages.formValidation_NotLabelExpression());
+            }
+            return FormValidation.ok();
         }
 
         @Nonnull
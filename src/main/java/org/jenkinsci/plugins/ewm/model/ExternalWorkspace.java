@@ -1,16 +1,19 @@
 package org.jenkinsci.plugins.ewm.model;
 
 import hudson.FilePath;
+import hudson.Functions;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.model.ModelObject;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.services.WorkspaceSizeCalculator;
 import org.jenkinsci.plugins.ewm.utils.RandomUtil;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
 import java.io.File;
@@ -34,7 +37,17 @@ public class ExternalWorkspace implements Serializable, ModelObject {
 
     public ExternalWorkspace(@Nonnull String diskPoolId, @Nonnull String diskId,
                              @Nonnull String masterMountPoint, @Nonnull String pathOnDisk) {
-        this.id = RandomUtil.generateRandomHexString(32);
+        this(RandomUtil.generateTimeOrderedId(), diskPoolId, diskId, masterMountPoint, pathOnDisk);
+    }
+
+    /**
+     * Recreates a workspace that was already allocated, e.g. when it's read from the
+     * {@link org.jenkinsci.plugins.ewm.services.WorkspaceRegistry}.
+     */
+    @Restricted(NoExternalUse.class)
+    public ExternalWorkspace(@Nonnull String id, @Nonnull String diskPoolId, @Nonnull String diskId,
+                             @Nonnull String masterMountPoint, @Nonnull String pathOnDisk) {
+        this.id = id;
         this.diskPoolId = diskPoolId;
         this.diskId = diskId;
         this.masterMountPoint = masterMountPoint;
@@ -79,6 +92,19 @@ public class ExternalWorkspace implements Serializable, ModelObject {
         return new File(masterMountPoint, pathOnDisk).getPath();
     }
 
+    /**
+     * @return the last measured size of the workspace, in a human readable format,
+     * or {@code null} if it wasn't measured yet
+     * @see WorkspaceSizeCalculator
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressWarnings("unused")
+    @CheckForNull
+    public String getSize() {
+        WorkspaceSizeCalculator.Size size = WorkspaceSizeCalculator.getSize(id);
+        return size == null ? null : Functions.humanReadableByteSize(size.getBytes());
+    }
+
     @Override
     public String getDisplayName() {
         return Messages.model_ExternalWorkspace_DisplayName(diskId, diskPoolId);
@@ -8,9 +8,11 @@ import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.ewm.Messages;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static hudson.Util.fixNull;
 
@@ -23,9 +25,17 @@ public class ExternalWorkspaceProperty extends NodeProperty<Node> {
 
     private final List<NodeDiskPool> nodeDiskPools;
 
+    private transient Map<String, NodeDiskPool> nodeDiskPoolIndex;
+
     @DataBoundConstructor
     public ExternalWorkspaceProperty(List<NodeDiskPool> nodeDiskPools) {
         this.nodeDiskPools = fixNull(nodeDiskPools);
+        this.nodeDiskPoolIndex = NodeDiskPool.indexNodeDiskPools(this.nodeDiskPools);
+    }
+
+    protected Object readResolve() {
+        nodeDiskPoolIndex = NodeDiskPool.indexNodeDiskPools(fixNull(nodeDiskPools));
+        return this;
     }
 
     @Nonnull
@@ -33,6 +43,15 @@ public class ExternalWorkspaceProperty extends NodeProperty<Node> {
         return Collections.unmodifiableList(nodeDiskPools);
     }
 
+    /**
+     * @param diskPoolRefId the Disk Pool Ref ID
+     * @return the first node disk pool that has the given {@link NodeDiskPool#getDiskPoolRefId()}, {@code null} otherwise
+     */
+    @CheckForNull
+    public NodeDiskPool getNodeDiskPool(@CheckForNull String diskPoolRefId) {
+        return diskPoolRefId == null ? null : nodeDiskPoolIndex.get(diskPoolRefId);
+    }
+
     @Extension
     @Symbol("exwsNodeConfigurationDiskPools")
     public static class DescriptorImpl extends NodePropertyDescriptor {
@@ -13,7 +13,9 @@ import org.kohsuke.stapler.QueryParameter;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static hudson.Util.fixEmptyAndTrim;
 import static hudson.Util.fixNull;
@@ -29,10 +31,18 @@ public class NodeDiskPool implements Describable<NodeDiskPool> {
     private final String diskPoolRefId;
     private final List<NodeDisk> nodeDisks;
 
+    private transient Map<String, NodeDisk> nodeDiskIndex;
+
     @DataBoundConstructor
     public NodeDiskPool(String diskPoolRefId, List<NodeDisk> nodeDisks) {
         this.diskPoolRefId = fixEmptyAndTrim(diskPoolRefId);
         this.nodeDisks = fixNull(nodeDisks);
+        this.nodeDiskIndex = indexNodeDisks(this.nodeDisks);
+    }
+
+    protected Object readResolve() {
+        nodeDiskIndex = indexNodeDisks(fixNull(nodeDisks));
+        return this;
     }
 
     @CheckForNull
@@ -45,6 +55,47 @@ public class NodeDiskPool implements Describable<NodeDiskPool> {
         return Collections.unmodifiableList(nodeDisks);
     }
 
+    /**
+     * @param diskRefId the Disk Ref ID
+     * @return the first node disk definition that has the given {@link NodeDisk#getDiskRefId()}, {@code null} otherwise
+     */
+    @CheckForNull
+    public NodeDisk getNodeDisk(@CheckForNull String diskRefId) {
+        return diskRefId == null ? null : nodeDiskIndex.get(diskRefId);
+    }
+
+    /**
+     * Indexes the given node disk pools by their {@link #getDiskPoolRefId()}.
+     * If several node disk pools have the same Disk Pool Ref ID, the first one is indexed.
+     *
+     * @param nodeDiskPools the node disk pools
+     * @return an immutable map from the Disk Pool Ref ID to the node disk pool
+     */
+    @Restricted(NoExternalUse.class)
+    @Nonnull
+    public static Map<String, NodeDiskPool> indexNodeDiskPools(@Nonnull List<NodeDiskPool> nodeDiskPools) {
+        Map<String, NodeDiskPool> index = new HashMap<>();
+        for (NodeDiskPool nodeDiskPool : nodeDiskPools) {
+            String diskPoolRefId = nodeDiskPool.getDiskPoolRefId();
+            if (diskPoolRefId != null) {
+                index.putIfAbsent(diskPoolRefId, nodeDiskPool);
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    @Nonnull
+    private static Map<String, NodeDisk> indexNodeDisks(@Nonnull List<NodeDisk> nodeDisks) {
+        Map<String, NodeDisk> index = new HashMap<>();
+        for (NodeDisk nodeDisk : nodeDisks) {
+            String diskRefId = nodeDisk.getDiskRefId();
+            if (diskRefId != null) {
+                index.putIfAbsent(diskRefId, nodeDisk);
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return DESCRIPTOR;
@@ -0,0 +1,98 @@
+package org.jenkinsci.plugins.ewm.providers;
+
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for the {@link DiskInfoProvider}s whose values are measured by periodically probing the disk,
+ * under its master mount point.
+ * The probes are scheduled by {@link org.jenkinsci.plugins.ewm.services.DiskProbeWork}.
+ * <p>
+ * The measured values are kept in memory only, so they are measured again after a restart of Jenkins,
+ * or after the Jenkins global config is saved.
+ */
+public abstract class AbstractProbingDiskInfo extends DiskInfoProvider {
+
+    /**
+     * The directory, relative to the master mount point, where the probes create their files.
+     */
+    public static final String PROBE_DIRECTORY = ".exws-probe";
+
+    private static final long DEFAULT_PROBE_INTERVAL = 60;
+
+    /**
+     * Weight of the last measurement in the smoothed values.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    // probe interval has to be in minutes
+    private long probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    private transient volatile long lastProbe;
+
+    /**
+     * @return the probe interval in minutes
+     */
+    public long getProbeInterval() {
+        // XStream doesn't run the field initializers, the interval is 0 for the configs saved before it existed
+        return probeInterval > 0 ? probeInterval : DEFAULT_PROBE_INTERVAL;
+    }
+
+    @DataBoundSetter
+    public void setProbeInterval(long probeInterval) {
+        this.probeInterval = probeInterval > 0 ? probeInterval : DEFAULT_PROBE_INTERVAL;
+    }
+
+    /**
+     * Marks the probe as started, if it is due.
+     * The next probe is due {@link #getProbeInterval()} minutes later, regardless of how long this probe takes.
+     *
+     * @return {@code true} if the probe was due and the caller should run it
+     */
+    public synchronized boolean startProbeIfDue() {
+        long now = System.currentTimeMillis();
+        if (lastProbe != 0 && now - lastProbe < TimeUnit.MINUTES.toMillis(getProbeInterval())) {
+            return false;
+        }
+        lastProbe = now;
+        return true;
+    }
+
+    /**
+     * Probes the disk mounted at the given master mount point.
+     *
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @throws IOException if the probe directory can't be created, or if the probe fails
+     */
+    public final void probe(@Nonnull String masterMountPoint) throws IOException {
+        File directory = new File(masterMountPoint, PROBE_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create the probe directory " + directory);
+        }
+        probe(directory);
+    }
+
+    /**
+     * Runs the actual probe and records its results.
+     *
+     * @param directory the directory where the probe may create its files. The files must be deleted by the probe
+     * @throws IOException if the probe fails
+     */
+    protected abstract void probe(@Nonnull File directory) throws IOException;
+
+    /**
+     * Smooths the measured values with an exponentially weighted moving average.
+     *
+     * @param previous the previous smoothed value, {@code 0} if nothing was measured yet
+     * @param last     the last measured value
+     * @return the new smoothed value
+     */
+    protected static double smooth(double previous, double last) {
+        return previous == 0 ? last : previous * (1 - SMOOTHING) + last * SMOOTHING;
+    }
+}
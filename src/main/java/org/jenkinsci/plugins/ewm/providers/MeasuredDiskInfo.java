@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.ewm.providers;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.jenkinsci.plugins.ewm.DiskInfoProviderDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link DiskInfoProvider} implementation that measures the read and write speeds of the disk.
+ * Each probe sequentially writes a file of {@link #getProbeSize()} MB, syncs it to the disk, and reads it back.
+ * The speeds are smoothed across the probes, so a single busy period doesn't swing them.
+ */
+@Extension
+public class MeasuredDiskInfo extends AbstractProbingDiskInfo {
+
+    private static final int DEFAULT_PROBE_SIZE = 64;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * The JDK specific option that bypasses the page cache, {@code null} if the JDK doesn't provide it.
+     */
+    private static final OpenOption DIRECT = findDirectOption();
+
+    // probe size has to be in MB
+    private int probeSize = DEFAULT_PROBE_SIZE;
+
+    private transient volatile double measuredReadSpeed;
+    private transient volatile double measuredWriteSpeed;
+
+    @DataBoundConstructor
+    public MeasuredDiskInfo() {
+        super();
+    }
+
+    /**
+     * @return the size of the file written and read by each probe, in MB
+     */
+    public int getProbeSize() {
+        return probeSize > 0 ? probeSize : DEFAULT_PROBE_SIZE;
+    }
+
+    @DataBoundSetter
+    public void setProbeSize(int probeSize) {
+        this.probeSize = probeSize > 0 ? probeSize : DEFAULT_PROBE_SIZE;
+    }
+
+    /**
+     * @return the measured read speed in MB/s, or 0 if it wasn't measured yet
+     */
+    @Override
+    public int getReadSpeed() {
+        return (int) Math.round(measuredReadSpeed);
+    }
+
+    /**
+     * @return the measured write speed in MB/s, or 0 if it wasn't measured yet
+     */
+    @Override
+    public int getWriteSpeed() {
+        return (int) Math.round(measuredWriteSpeed);
+    }
+
+    @Override
+    protected void probe(@Nonnull File directory) throws IOException {
+        int size = getProbeSize();
+        Path file = Files.createTempFile(directory.toPath(), "throughput", ".tmp");
+        try {
+            byte[] block = new byte[BLOCK_SIZE];
+            ThreadLocalRandom.current().nextBytes(block);
+
+            long start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < size; i++) {
+                    ByteBuffer buffer = ByteBuffer.wrap(block);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(true);
+            }
+            double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            read(file);
+            double readSeconds = (System.nanoTime() - start) / 1e9;
+
+            measuredWriteSpeed = smooth(measuredWriteSpeed, size / Math.max(writeSeconds, 1e-6));
+            measuredReadSpeed = smooth(measuredReadSpeed, size / Math.max(readSeconds, 1e-6));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Reads the whole file, bypassing the page cache if the JDK and the file system allow it.
+     * Otherwise, the file that was just written would be read from memory.
+     */
+    private static void read(Path file) throws IOException {
+        if (DIRECT != null) {
+            try {
+                int alignment = (int) Files.getFileStore(file).getBlockSize();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE + alignment).alignedSlice(alignment);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, DIRECT)) {
+                    while (channel.read(buffer) >= 0) {
+                        buffer.clear();
+                    }
+                }
+                return;
+            } catch (UnsupportedOperationException | IOException e) {
+                // direct I/O isn't supported by every file system, fallback to a regular read
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Looks up {@code com.sun.nio.file.ExtendedOpenOption.DIRECT} reflectively, since it isn't part of the Java API.
+     */
+    private static OpenOption findDirectOption() {
+        try {
+            Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : options.getEnumConstants()) {
+                if ("DIRECT".equals(((Enum<?>) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            // not provided by this JDK
+        }
+        return null;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends DiskInfoProviderDescriptor {
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckProbeSize(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckProbeInterval(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.providers_MeasuredDiskInfo_DisplayName();
+        }
+    }
+}
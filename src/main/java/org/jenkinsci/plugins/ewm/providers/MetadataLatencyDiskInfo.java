@@ -0,0 +1,125 @@
+package org.jenkinsci.plugins.ewm.providers;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.jenkinsci.plugins.ewm.DiskInfoProviderDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * {@link DiskInfoProvider} implementation that measures the latency of the file metadata operations on the disk.
+ * Each probe creates, stats and unlinks {@link #getProbeFiles()} empty files, which is what dominates
+ * the small-file workloads such as SCM checkouts or package manager installs.
+ * <p>
+ * The 50th and 95th percentiles of a create/stat/unlink cycle are smoothed across the probes.
+ * The 95th percentile is reported as the {@link #getMetadataLatency()}.
+ */
+@Extension
+public class MetadataLatencyDiskInfo extends AbstractProbingDiskInfo {
+
+    private static final int DEFAULT_PROBE_FILES = 100;
+
+    private int probeFiles = DEFAULT_PROBE_FILES;
+
+    private transient volatile double medianMetadataLatency;
+    private transient volatile double metadataLatency;
+
+    @DataBoundConstructor
+    public MetadataLatencyDiskInfo() {
+        super();
+    }
+
+    /**
+     * @return the number of files created, stat-ed and unlinked by each probe
+     */
+    public int getProbeFiles() {
+        return probeFiles > 0 ? probeFiles : DEFAULT_PROBE_FILES;
+    }
+
+    @DataBoundSetter
+    public void setProbeFiles(int probeFiles) {
+        this.probeFiles = probeFiles > 0 ? probeFiles : DEFAULT_PROBE_FILES;
+    }
+
+    /**
+     * @return the 95th percentile of a create/stat/unlink cycle in milliseconds, or 0 if it wasn't measured yet
+     */
+    @Override
+    public double getMetadataLatency() {
+        return metadataLatency;
+    }
+
+    /**
+     * @return the 50th percentile of a create/stat/unlink cycle in milliseconds, or 0 if it wasn't measured yet
+     */
+    public double getMedianMetadataLatency() {
+        return medianMetadataLatency;
+    }
+
+    @Override
+    protected void probe(@Nonnull File directory) throws IOException {
+        Path probeDirectory = Files.createTempDirectory(directory.toPath(), "metadata");
+        try {
+            long[] cycles = new long[getProbeFiles()];
+            for (int i = 0; i < cycles.length; i++) {
+                Path file = probeDirectory.resolve("probe-" + i);
+                long start = System.nanoTime();
+                Files.createFile(file);
+                Files.readAttributes(file, BasicFileAttributes.class);
+                Files.delete(file);
+                cycles[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(cycles);
+
+            medianMetadataLatency = smooth(medianMetadataLatency, percentile(cycles, 50) / 1e6);
+            metadataLatency = smooth(metadataLatency, percentile(cycles, 95) / 1e6);
+        } finally {
+            Files.deleteIfExists(probeDirectory);
+        }
+    }
+
+    /**
+     * @param sorted     the sorted values
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the given percentile, using the nearest-rank method
+     */
+    static long percentile(@Nonnull long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    @Extension
+    public static class DescriptorImpl extends DiskInfoProviderDescriptor {
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckProbeFiles(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckProbeInterval(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.providers_MetadataLatencyDiskInfo_DisplayName();
+        }
+    }
+}
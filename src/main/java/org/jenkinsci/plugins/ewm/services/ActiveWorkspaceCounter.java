@@ -0,0 +1,147 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live count of the {@code exws} bodies currently running on each {@link Disk},
+ * keyed by the Disk Pool ID and the Disk ID, since the Disk IDs are only unique within a Disk Pool.
+ * It's a better proxy for the I/O contention of a disk than its usable space.
+ * <p>
+ * The bodies are also counted per workspace, so that a workspace isn't deleted or deduplicated while it's in use.
+ * A workspace whose deletion is scheduled is marked, atomically with its count, so no body starts in it afterwards,
+ * see {@link #markDeleted(String)}.
+ */
+@Restricted(NoExternalUse.class)
+public final class ActiveWorkspaceCounter {
+
+    private static final ConcurrentMap<List<String>, Integer> COUNTS = new ConcurrentHashMap<>();
+    // workspace id -> number of running bodies, or DELETED
+    private static final ConcurrentMap<String, Integer> WORKSPACE_COUNTS = new ConcurrentHashMap<>();
+    private static final Integer DELETED = -1;
+
+    private ActiveWorkspaceCounter() {
+        // do not instantiate
+    }
+
+    /**
+     * Records that an {@code exws} body has started on the given disk.
+     *
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     */
+    public static void increment(@CheckForNull String diskPoolId, @Nonnull String diskId) {
+        COUNTS.merge(keyOf(diskPoolId, diskId), 1, Integer::sum);
+    }
+
+    /**
+     * Records that an {@code exws} body has started in the given workspace,
+     * unless the workspace's deletion is scheduled.
+     *
+     * @param diskPoolId  the Disk Pool ID
+     * @param diskId      the Disk ID
+     * @param workspaceId the workspace id
+     * @return {@code false} if the workspace's deletion is scheduled, and nothing was recorded
+     */
+    public static boolean increment(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull String workspaceId) {
+        Integer count = WORKSPACE_COUNTS.compute(workspaceId,
+                (k, current) -> current == null ? Integer.valueOf(1) : current.equals(DELETED) ? DELETED : current + 1);
+        if (DELETED.equals(count)) {
+            return false;
+        }
+        increment(diskPoolId, diskId);
+        return true;
+    }
+
+    /**
+     * Records that an {@code exws} body has finished on the given disk.
+     * The count never goes below zero, e.g. for the bodies resumed after a restart of Jenkins.
+     *
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     */
+    public static void decrement(@CheckForNull String diskPoolId, @Nonnull String diskId) {
+        COUNTS.computeIfPresent(keyOf(diskPoolId, diskId), (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Records that an {@code exws} body has finished in the given workspace.
+     *
+     * @param diskPoolId  the Disk Pool ID
+     * @param diskId      the Disk ID
+     * @param workspaceId the workspace id
+     */
+    public static void decrement(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull String workspaceId) {
+        decrement(diskPoolId, diskId);
+        WORKSPACE_COUNTS.computeIfPresent(workspaceId,
+                (k, count) -> count.equals(DELETED) ? DELETED : count > 1 ? Integer.valueOf(count - 1) : null);
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     * @return the number of {@code exws} bodies currently running on the given disk
+     */
+    public static int get(@CheckForNull String diskPoolId, @CheckForNull String diskId) {
+        Integer count = diskId == null ? null : COUNTS.get(keyOf(diskPoolId, diskId));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param disk the disk entry
+     * @return the number of {@code exws} bodies currently running on the given disk
+     */
+    public static int get(@Nonnull Disk disk) {
+        return get(disk.getDiskPoolId(), disk.getDiskId());
+    }
+
+    /**
+     * @param workspaceId the workspace id
+     * @return the number of {@code exws} bodies currently running in the given workspace
+     */
+    public static int getByWorkspace(@Nonnull String workspaceId) {
+        Integer count = WORKSPACE_COUNTS.get(workspaceId);
+        return count == null || count.equals(DELETED) ? 0 : count;
+    }
+
+    /**
+     * Marks the given workspace as being deleted, unless an {@code exws} body is running in it.
+     * Once marked, no {@code exws} body can start in the workspace until {@link #unmarkDeleted(String)}.
+     *
+     * @param workspaceId the workspace id
+     * @return the number of {@code exws} bodies running in the workspace, the workspace is marked only if it's {@code 0}
+     */
+    public static int markDeleted(@Nonnull String workspaceId) {
+        Integer count = WORKSPACE_COUNTS.compute(workspaceId, (k, current) -> current == null ? DELETED : current);
+        return count.equals(DELETED) ? 0 : count;
+    }
+
+    /**
+     * Removes the mark of {@link #markDeleted(String)}, once the workspace's deletion has completed or failed.
+     *
+     * @param workspaceId the workspace id
+     */
+    public static void unmarkDeleted(@Nonnull String workspaceId) {
+        WORKSPACE_COUNTS.remove(workspaceId, DELETED);
+    }
+
+    /**
+     * @param workspaceId the workspace id
+     * @return {@code true} if the given workspace is marked as being deleted
+     */
+    public static boolean isMarkedDeleted(@Nonnull String workspaceId) {
+        return DELETED.equals(WORKSPACE_COUNTS.get(workspaceId));
+    }
+
+    private static List<String> keyOf(String diskPoolId, String diskId) {
+        return Arrays.asList(diskPoolId, diskId);
+    }
+}
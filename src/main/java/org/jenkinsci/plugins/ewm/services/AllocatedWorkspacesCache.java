@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.actions.ExwsAllocateActionImpl;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the workspaces recorded by the {@link ExwsAllocateActionImpl} of each run,
+ * keyed by the run's externalizable id, i.e. {@code jobFullName#buildNumber}.
+ * <p>
+ * The downstream {@code exwsAllocate} steps resolve the workspace of the selected run from this cache,
+ * so a fan-out of many downstream jobs doesn't load the same upstream build record each time.
+ * The entries are filled when the workspaces are allocated or first resolved, and evicted in least recently used
+ * order once {@link #MAX_SIZE} is reached, or when their run or job is deleted.
+ */
+@Restricted(NoExternalUse.class)
+public final class AllocatedWorkspacesCache {
+
+    /**
+     * The maximum number of runs whose allocated workspaces are cached.
+     */
+    static final int MAX_SIZE = SystemProperties.getInteger(AllocatedWorkspacesCache.class.getName() + ".maxSize", 1000);
+
+    private static final Map<String, Entry> CACHE = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private AllocatedWorkspacesCache() {
+        // do not instantiate
+    }
+
+    /**
+     * Caches the workspaces allocated by the given run.
+     *
+     * @param run        the run
+     * @param workspaces the workspaces recorded by the run's {@link ExwsAllocateActionImpl}
+     * @return the cached entry
+     */
+    @Nonnull
+    public static Entry put(@Nonnull Run<?, ?> run, @Nonnull List<ExternalWorkspace> workspaces) {
+        Entry entry = new Entry(run.toString(), Collections.unmodifiableList(new ArrayList<>(workspaces)));
+        synchronized (CACHE) {
+            CACHE.put(run.getExternalizableId(), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @param externalizableId the run's externalizable id
+     * @return the cached workspaces of the run, or {@code null} if they aren't cached
+     */
+    @CheckForNull
+    public static Entry get(@Nonnull String externalizableId) {
+        synchronized (CACHE) {
+            return CACHE.get(externalizableId);
+        }
+    }
+
+    public static void invalidate(@Nonnull String externalizableId) {
+        synchronized (CACHE) {
+            CACHE.remove(externalizableId);
+        }
+    }
+
+    /**
+     * Evicts the cached workspaces of all the runs of the given job, or of all the jobs within the given folder.
+     *
+     * @param itemFullName the job's or folder's full name
+     */
+    public static void invalidateJob(@Nonnull String itemFullName) {
+        String jobPrefix = itemFullName + '#';
+        String folderPrefix = itemFullName + '/';
+        synchronized (CACHE) {
+            for (Iterator<String> it = CACHE.keySet().iterator(); it.hasNext(); ) {
+                String id = it.next();
+                if (id.startsWith(jobPrefix) || id.startsWith(folderPrefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * The cached workspaces of a run.
+     */
+    public static final class Entry {
+
+        private final String runDisplayName;
+        private final List<ExternalWorkspace> workspaces;
+
+        Entry(@Nonnull String runDisplayName, @Nonnull List<ExternalWorkspace> workspaces) {
+            this.runDisplayName = runDisplayName;
+            this.workspaces = workspaces;
+        }
+
+        /**
+         * @return the run's display name, as returned by {@link Run#toString()}
+         */
+        @Nonnull
+        public String getRunDisplayName() {
+            return runDisplayName;
+        }
+
+        @Nonnull
+        public List<ExternalWorkspace> getWorkspaces() {
+            return workspaces;
+        }
+    }
+
+    /**
+     * Evicts the cached workspaces of the deleted runs.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            invalidate(run.getExternalizableId());
+        }
+    }
+
+    /**
+     * Evicts the cached workspaces of the deleted and renamed jobs.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidateJob(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidateJob(oldFullName);
+        }
+    }
+}
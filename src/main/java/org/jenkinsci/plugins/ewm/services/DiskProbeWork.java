@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.providers.AbstractProbingDiskInfo;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules the probes of the {@link AbstractProbingDiskInfo} providers defined in the Jenkins global config.
+ * <p>
+ * At most {@link #CONCURRENCY} probes run at the same time, so they don't fight with the builds
+ * for the disks' bandwidth. The degraded disks, as flagged by the {@link DiskProber}, are not probed.
+ * <p>
+ * A disk whose previous probe is still running isn't probed again. A probe that runs for longer than {@link #TIMEOUT}
+ * is interrupted, and it no longer counts against {@link #CONCURRENCY}, so a hung mount point can't hold back
+ * the probes of the other disks.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class DiskProbeWork extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(DiskProbeWork.class.getName());
+
+    /**
+     * The maximum number of disks probed at the same time.
+     */
+    static final int CONCURRENCY = SystemProperties.getInteger(DiskProbeWork.class.getName() + ".concurrency", 1);
+
+    /**
+     * How long a probe may run before it's interrupted, in milliseconds.
+     */
+    static final long TIMEOUT = SystemProperties.getLong(DiskProbeWork.class.getName() + ".timeout",
+            TimeUnit.MINUTES.toMillis(10));
+
+    // the threads of the hung probes aren't reused, the concurrency is bounded by the in-flight probes instead
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "External Workspace disk info probe"));
+
+    // master mount point -> probe still running
+    private static final ConcurrentMap<String, InFlightProbe> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    public DiskProbeWork() {
+        super("External Workspace disk info probing");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        List<Disk> disks = new ArrayList<>();
+        for (DiskPool diskPool : ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getDiskPools()) {
+            disks.addAll(diskPool.getDisks());
+        }
+        schedule(disks, CONCURRENCY, TIMEOUT);
+    }
+
+    /**
+     * Interrupts the probes that timed out, then starts the due probes of the given disks, within the concurrency.
+     *
+     * @param disks       the disks defined in the Jenkins global config
+     * @param concurrency the maximum number of probes running at the same time, not counting the timed out ones
+     * @param timeout     how long a probe may run, in milliseconds
+     * @return the number of started probes
+     */
+    static int schedule(@Nonnull List<Disk> disks, int concurrency, long timeout) {
+        int running = 0;
+        for (Iterator<Map.Entry<String, InFlightProbe>> it = IN_FLIGHT.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, InFlightProbe> entry = it.next();
+            InFlightProbe probe = entry.getValue();
+            if (probe.future.isCancelled() && !probe.started) {
+                // the task that removes the entry was cancelled before it ran
+                it.remove();
+            } else if (probe.getAge() > timeout) {
+                if (probe.future.cancel(true)) {
+                    LOGGER.log(Level.WARNING, "The probe of {0} didn''t complete within {1} ms, it was interrupted",
+                            new Object[]{entry.getKey(), timeout});
+                }
+            } else {
+                running++;
+            }
+        }
+
+        int started = 0;
+        for (Disk disk : disks) {
+            if (running >= concurrency) {
+                break;
+            }
+            DiskInfoProvider diskInfo = disk.getDiskInfo();
+            String masterMountPoint = disk.getMasterMountPoint();
+            if (!(diskInfo instanceof AbstractProbingDiskInfo) || masterMountPoint == null
+                    || IN_FLIGHT.containsKey(masterMountPoint) || DiskProber.isDegraded(disk)) {
+                continue;
+            }
+
+            AbstractProbingDiskInfo probingDiskInfo = (AbstractProbingDiskInfo) diskInfo;
+            if (probingDiskInfo.startProbeIfDue()) {
+                InFlightProbe probe = new InFlightProbe();
+                IN_FLIGHT.put(masterMountPoint, probe);
+                probe.future = EXECUTOR.submit(() -> {
+                    probe.started = true;
+                    try {
+                        probingDiskInfo.probe(masterMountPoint);
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to probe Disk ID '" + disk.getDiskId() + "'", e);
+                    } finally {
+                        IN_FLIGHT.remove(masterMountPoint, probe);
+                    }
+                });
+                running++;
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * @return the number of probes still running, including the timed out ones that didn't return yet
+     */
+    static int getInFlightCount() {
+        return IN_FLIGHT.size();
+    }
+
+    private static final class InFlightProbe {
+
+        private final long start = System.nanoTime();
+        private volatile Future<?> future;
+        private volatile boolean started;
+
+        long getAge() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+}
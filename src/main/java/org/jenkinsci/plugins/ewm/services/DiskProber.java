@@ -0,0 +1,284 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Probes {@link Disk}s in parallel, on a bounded thread pool, with a deadline for each disk that starts
+ * when its probe starts.
+ * <p>
+ * A disk that doesn't answer before the deadline (e.g. a hung NFS mount) is skipped and flagged as degraded.
+ * Degraded disks are not probed again until {@link #COOL_DOWN} has elapsed and their last probe has returned,
+ * so a hung mount point can't take over the whole thread pool.
+ */
+@Restricted(NoExternalUse.class)
+public final class DiskProber {
+
+    private static final Logger LOGGER = Logger.getLogger(DiskProber.class.getName());
+
+    /**
+     * The maximum number of disks probed at the same time.
+     */
+    static final int THREADS = SystemProperties.getInteger(DiskProber.class.getName() + ".threads", 8);
+
+    /**
+     * How long to wait for a disk to answer once its probe started, in milliseconds.
+     */
+    static final long TIMEOUT = SystemProperties.getLong(DiskProber.class.getName() + ".timeout",
+            TimeUnit.SECONDS.toMillis(5));
+
+    /**
+     * How long a disk that didn't answer in time is skipped, in milliseconds.
+     */
+    static final long COOL_DOWN = SystemProperties.getLong(DiskProber.class.getName() + ".coolDown",
+            TimeUnit.MINUTES.toMillis(5));
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "External Workspace disk prober"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    // mount point -> System.nanoTime() until which the disk is considered degraded
+    private static final ConcurrentMap<String, Long> DEGRADED = new ConcurrentHashMap<>();
+    // mount points whose probe timed out and hasn't returned yet
+    private static final Set<String> HUNG = ConcurrentHashMap.newKeySet();
+
+    private DiskProber() {
+        // do not instantiate
+    }
+
+    /**
+     * Operation executed against each probed disk.
+     *
+     * @param <T> the type of the probed value
+     */
+    @FunctionalInterface
+    public interface Probe<T> {
+        T call(@Nonnull Disk disk) throws IOException;
+    }
+
+    /**
+     * Runs the given probe against all the given disks, in parallel.
+     * The degraded disks and the disks that don't answer before the deadline are left out of the result.
+     *
+     * @param disks the disks to be probed
+     * @param probe the operation to run against each disk
+     * @param <T>   the type of the probed value
+     * @return the probed value of each disk that answered in time, in the same order as the given disks
+     * @throws IOException if the probe fails for any of the disks, or if the probing is interrupted
+     * @see #probe(List, Probe, Predicate)
+     */
+    @Nonnull
+    public static <T> Map<Disk, T> probe(@Nonnull List<Disk> disks, @Nonnull Probe<T> probe) throws IOException {
+        return probe(disks, probe, disk -> false);
+    }
+
+    /**
+     * Runs the given probe against all the given disks, in parallel.
+     * The degraded disks and the disks that don't answer before the deadline are left out of the result.
+     * <p>
+     * The deadline of each disk starts when its probe starts, so the time spent waiting for a free thread
+     * isn't held against the disk. A probe that doesn't even start before the deadline is cancelled,
+     * and its disk is left out of the result without being flagged as degraded.
+     * <p>
+     * The probes that don't touch the file system for a disk, e.g. that only read the {@link UsableSpaceSnapshot},
+     * run on the calling thread, as there's nothing to wait for.
+     *
+     * @param disks  the disks to be probed
+     * @param probe  the operation to run against each disk
+     * @param inline whether the probe of a disk only reads in-memory state, and runs on the calling thread
+     * @param <T>    the type of the probed value
+     * @return the probed value of each disk that answered in time, in the same order as the given disks
+     * @throws IOException if the probe fails for any of the disks, or if the probing is interrupted
+     */
+    @Nonnull
+    public static <T> Map<Disk, T> probe(@Nonnull List<Disk> disks, @Nonnull Probe<T> probe,
+                                         @Nonnull Predicate<Disk> inline) throws IOException {
+        Map<Disk, ProbeTask<T>> tasks = new LinkedHashMap<>();
+        List<Disk> inlineDisks = new ArrayList<>();
+        for (Disk disk : disks) {
+            String key = keyOf(disk);
+            if (isDegraded(key)) {
+                LOGGER.log(Level.FINE, "Skipping degraded Disk ID ''{0}''", disk.getDiskId());
+                continue;
+            }
+            if (inline.test(disk)) {
+                inlineDisks.add(disk);
+                continue;
+            }
+            ProbeTask<T> task = new ProbeTask<>(disk, key, probe);
+            task.future = EXECUTOR.submit(task);
+            tasks.put(disk, task);
+        }
+
+        Map<Disk, T> inlineResults = new HashMap<>();
+        for (Disk disk : inlineDisks) {
+            inlineResults.put(disk, probe.call(disk));
+        }
+
+        Map<Disk, T> results = new LinkedHashMap<>();
+        for (Disk disk : disks) {
+            if (inlineResults.containsKey(disk)) {
+                results.put(disk, inlineResults.get(disk));
+                continue;
+            }
+            ProbeTask<T> task = tasks.get(disk);
+            if (task == null) {
+                continue;
+            }
+            try {
+                if (task.await()) {
+                    results.put(disk, task.future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while probing Disk ID '" + disk.getDiskId() + "'");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param disk the disk entry
+     * @return {@code true} if the disk didn't answer in time recently, and it's currently skipped
+     */
+    public static boolean isDegraded(@Nonnull Disk disk) {
+        return isDegraded(keyOf(disk));
+    }
+
+    private static boolean isDegraded(String key) {
+        if (HUNG.contains(key)) {
+            return true;
+        }
+        Long until = DEGRADED.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        DEGRADED.remove(key, until);
+        return false;
+    }
+
+    private static void markDegraded(Disk disk, Future<?> future) {
+        String key = keyOf(disk);
+        if (!future.isDone()) {
+            HUNG.add(key);
+            if (future.isDone()) {
+                // the probe returned in the meantime
+                HUNG.remove(key);
+            }
+        }
+        DEGRADED.put(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COOL_DOWN));
+        LOGGER.log(Level.WARNING, "Disk ID ''{0}'' didn''t answer within {1} ms. It will be skipped for {2} ms",
+                new Object[]{disk.getDiskId(), TIMEOUT, COOL_DOWN});
+    }
+
+    /**
+     * The probe of a disk, whose deadline starts when the probe starts.
+     */
+    private static final class ProbeTask<T> implements Callable<T> {
+
+        private final Disk disk;
+        private final String key;
+        private final Probe<T> probe;
+        private final long submitted = System.nanoTime();
+        // claimed either by the probing thread when the probe starts, or by the waiting thread when it gives up
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile long started;
+        private Future<T> future;
+
+        ProbeTask(Disk disk, String key, Probe<T> probe) {
+            this.disk = disk;
+            this.key = key;
+            this.probe = probe;
+        }
+
+        @Override
+        public T call() throws IOException {
+            started = System.nanoTime();
+            if (!claimed.compareAndSet(false, true)) {
+                // given up while queued, the future is already cancelled
+                return null;
+            }
+            try {
+                return probe.call(disk);
+            } finally {
+                HUNG.remove(key);
+            }
+        }
+
+        /**
+         * @return {@code true} if the disk answered in time, {@code false} otherwise
+         */
+        boolean await() throws InterruptedException, ExecutionException {
+            long timeout = TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+            while (true) {
+                boolean running = claimed.get();
+                long deadline = (running ? started : submitted) + timeout;
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    return true;
+                } catch (TimeoutException e) {
+                    if (running) {
+                        markDegraded(disk, future);
+                        return false;
+                    }
+                    if (claimed.compareAndSet(false, true)) {
+                        // the thread pool is busy with other disks, this one isn't to blame
+                        future.cancel(false);
+                        LOGGER.log(Level.FINE, "Disk ID ''{0}'' wasn''t probed within {1} ms, all the probing threads are busy",
+                                new Object[]{disk.getDiskId(), TIMEOUT});
+                        return false;
+                    }
+                    // the probe started in the meantime, its own deadline applies
+                }
+            }
+        }
+    }
+
+    private static String keyOf(Disk disk) {
+        String masterMountPoint = disk.getMasterMountPoint();
+        return masterMountPoint != null ? masterMountPoint : String.valueOf(disk.getDiskId());
+    }
+}
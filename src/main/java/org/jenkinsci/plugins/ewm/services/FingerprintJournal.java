@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.Fingerprint;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind journal for the workspace {@link Fingerprint}s.
+ * <p>
+ * Saving a fingerprint rewrites its whole XML file, so the steps only modify the fingerprints in memory
+ * and mark them as dirty here. The repeated updates of the same fingerprint are coalesced into a single save.
+ * The dirty fingerprints are saved in a batch {@link #FLUSH_DELAY} after the first change, when a build completes,
+ * and when Jenkins shuts down. No flush is scheduled while there is nothing to save.
+ * <p>
+ * The pending fingerprints are also served by {@link #get(String)}, so they are the instances that the
+ * later steps modify, even if the fingerprint map evicted them from its cache.
+ */
+@Restricted(NoExternalUse.class)
+public final class FingerprintJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintJournal.class.getName());
+
+    /**
+     * How long the save of the dirty fingerprints is delayed after the first change, in milliseconds.
+     */
+    static final long FLUSH_DELAY = SystemProperties.getLong(FingerprintJournal.class.getName() + ".flushDelay",
+            TimeUnit.SECONDS.toMillis(5));
+
+    private static final ConcurrentMap<String, Fingerprint> DIRTY = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean FLUSH_PENDING = new AtomicBoolean();
+
+    private FingerprintJournal() {
+        // do not instantiate
+    }
+
+    /**
+     * Marks the given fingerprint as modified, and schedules a flush unless one is already pending.
+     *
+     * @param fingerprint the modified fingerprint
+     */
+    public static void markDirty(@Nonnull Fingerprint fingerprint) {
+        DIRTY.put(fingerprint.getHashString(), fingerprint);
+        scheduleFlush();
+    }
+
+    /**
+     * @param id the fingerprint's md5 hash string, i.e. the workspace id
+     * @return the fingerprint if it has changes that aren't saved yet, {@code null} otherwise
+     */
+    @CheckForNull
+    public static Fingerprint get(@Nonnull String id) {
+        return DIRTY.get(id);
+    }
+
+    /**
+     * @return the number of fingerprints that have changes that aren't saved yet
+     */
+    public static int getPendingCount() {
+        return DIRTY.size();
+    }
+
+    /**
+     * Saves all the dirty fingerprints.
+     * A fingerprint that fails to save is logged and stays dirty, and another flush is scheduled to retry it.
+     */
+    public static void flush() {
+        List<Fingerprint> batch = new ArrayList<>(DIRTY.values());
+        for (Fingerprint fingerprint : batch) {
+            // remove it before saving, so that a concurrent update marks it dirty again
+            if (!DIRTY.remove(fingerprint.getHashString(), fingerprint)) {
+                continue;
+            }
+            try {
+                fingerprint.save();
+            } catch (IOException | RuntimeException e) {
+                DIRTY.putIfAbsent(fingerprint.getHashString(), fingerprint);
+                LOGGER.log(Level.WARNING, "Failed to save the workspace fingerprint " + fingerprint.getHashString(), e);
+            }
+        }
+        if (!DIRTY.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private static void scheduleFlush() {
+        if (FLUSH_PENDING.compareAndSet(false, true)) {
+            Timer.get().schedule(() -> {
+                // reset it before flushing, so that a concurrent change schedules another flush
+                FLUSH_PENDING.set(false);
+                flush();
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Terminator
+    @SuppressWarnings("unused")
+    public static void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Saves the dirty fingerprints once a build completes, so its workspace usages are durable.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+            flush();
+        }
+    }
+
+    static void clear() {
+        DIRTY.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.definitions.Quota;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Admission control of the workspace allocations against the {@link Quota}s of a {@link DiskPool}.
+ * <p>
+ * The space used within a Disk Pool is tracked per build and Disk: the larger of the sizes of the build's workspaces
+ * of the {@link WorkspaceRegistry}, as last measured by the {@link WorkspaceSizeCalculator}, and of the space
+ * the build reserved in the {@link SpaceReservationLedger}.
+ * No workspace is walked on the allocation path: the workspaces that weren't measured yet, e.g. since a restart
+ * of Jenkins, are accounted with the mean size recorded by the {@link WorkspaceSizeHistory} for their job,
+ * until the {@link WorkspaceSizeCalculator.AccountingWork} measures them.
+ * <p>
+ * The check and the reservation of the new workspace are made under the same lock, see {@link #checkAndReserve},
+ * so concurrent allocations, e.g. from the parallel branches of a build, see each other's reservations.
+ */
+@Restricted(NoExternalUse.class)
+public final class QuotaEnforcer {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private QuotaEnforcer() {
+        // do not instantiate
+    }
+
+    /**
+     * Selects a disk and reserves the requested space on it, after checking the Disk Pool's quotas that apply
+     * to the job, atomically with respect to the other allocations in the same Disk Pool.
+     *
+     * @param diskPool           the Disk Pool
+     * @param disks              the disks of the Disk Pool to select from
+     * @param jobFullName        the full name of the job that allocates the workspace
+     * @param requestedMegaBytes the estimated size of the new workspace, in MB
+     * @param owner              the {@link hudson.model.Run#getExternalizableId()} of the build that allocates the workspace
+     * @param selection          the disk selection, e.g. the disk allocation strategy
+     * @return the selected disk
+     * @throws AbortException if a quota would be exceeded
+     * @throws IOException    if the disk selection fails
+     * @see SpaceReservationLedger#selectAndReserve
+     */
+    @Nonnull
+    public static Disk checkAndReserve(@Nonnull DiskPool diskPool, @Nonnull List<Disk> disks, @Nonnull String jobFullName,
+                                       long requestedMegaBytes, @Nonnull String owner,
+                                       @Nonnull SpaceReservationLedger.Selection selection) throws IOException {
+        if (diskPool.getQuotas().isEmpty()) {
+            long requested = DiskAllocationStrategy.megaToBytes(Math.max(0, requestedMegaBytes));
+            return SpaceReservationLedger.selectAndReserve(diskPool.getDiskPoolId(), disks, owner, requested, selection);
+        }
+        return checkAndReserve(WorkspaceRegistry.get(), diskPool, disks, jobFullName, requestedMegaBytes, owner, selection);
+    }
+
+    @Nonnull
+    static Disk checkAndReserve(@Nonnull WorkspaceRegistry registry, @Nonnull DiskPool diskPool, @Nonnull List<Disk> disks,
+                                @Nonnull String jobFullName, long requestedMegaBytes, @Nonnull String owner,
+                                @Nonnull SpaceReservationLedger.Selection selection) throws IOException {
+        long requested = DiskAllocationStrategy.megaToBytes(Math.max(0, requestedMegaBytes));
+        return SpaceReservationLedger.selectAndReserve(diskPool.getDiskPoolId(), disks, owner, requested, selection,
+                () -> check(registry, diskPool, jobFullName, requestedMegaBytes));
+    }
+
+    /**
+     * Checks that allocating a new workspace wouldn't exceed any of the Disk Pool's quotas that apply to the job.
+     *
+     * @param registry           the workspace registry
+     * @param diskPool           the Disk Pool
+     * @param jobFullName        the full name of the job that allocates the workspace
+     * @param requestedMegaBytes the estimated size of the new workspace, in MB
+     * @throws AbortException if a quota would be exceeded
+     */
+    static void check(@Nonnull WorkspaceRegistry registry, @Nonnull DiskPool diskPool, @Nonnull String jobFullName,
+                      long requestedMegaBytes) throws AbortException {
+        String diskPoolId = diskPool.getDiskPoolId();
+        long requested = DiskAllocationStrategy.megaToBytes(Math.max(0, requestedMegaBytes));
+        for (Quota quota : diskPool.getQuotas()) {
+            if (!quota.appliesTo(jobFullName)) {
+                continue;
+            }
+            long used = getUsedBytes(registry, diskPool, quota);
+            if (used + requested > DiskAllocationStrategy.megaToBytes(quota.getLimit())) {
+                String scope = quota.getItemFullName() == null ? "all the jobs" : format("'%s'", quota.getItemFullName());
+                String message = format("The Disk Pool '%s' quota of %s MB for %s would be exceeded: %s MB are used, %s MB are requested",
+                        diskPoolId, quota.getLimit(), scope, used / MEGABYTE, requestedMegaBytes);
+                throw new AbortException(message);
+            }
+        }
+    }
+
+    /**
+     * @param registry the workspace registry
+     * @param diskPool the Disk Pool
+     * @param quota    the quota
+     * @return the space used by the builds that the quota applies to, in bytes
+     */
+    static long getUsedBytes(@Nonnull WorkspaceRegistry registry, @Nonnull DiskPool diskPool, @Nonnull Quota quota) {
+        String diskPoolId = diskPool.getDiskPoolId();
+        if (diskPoolId == null) {
+            return 0;
+        }
+        // keyed by Disk ID and build, the reservations are per build and Disk
+        Map<String, Long> measured = new HashMap<>();
+        Set<String> diskIds = new HashSet<>();
+        for (WorkspaceRegistry.Record record : registry.getByDiskPool(diskPoolId)) {
+            ExternalWorkspace exws = record.getWorkspace();
+            diskIds.add(exws.getDiskId());
+            if (!quota.appliesTo(record.getJobFullName())) {
+                continue;
+            }
+            WorkspaceSizeCalculator.Size size = WorkspaceSizeCalculator.getSize(exws.getId());
+            long bytes = size != null ? size.getBytes() : WorkspaceSizeHistory.getMeanBytes(record.getJobFullName(), diskPoolId);
+            String key = exws.getDiskId() + '\u0000' + record.getJobFullName() + '#' + record.getBuildNumber();
+            measured.merge(key, bytes, Long::sum);
+        }
+
+        // the reservations of the allocations in progress, whose workspaces aren't registered yet
+        Map<String, Long> reserved = new HashMap<>();
+        for (Disk disk : diskPool.getDisks()) {
+            if (disk.getDiskId() != null) {
+                diskIds.add(disk.getDiskId());
+            }
+        }
+        for (String diskId : diskIds) {
+            for (Map.Entry<String, Long> reservation : SpaceReservationLedger.getReservedBytesByOwner(diskPoolId, diskId).entrySet()) {
+                String owner = reservation.getKey();
+                int separator = owner.lastIndexOf('#');
+                if (quota.appliesTo(separator > 0 ? owner.substring(0, separator) : owner)) {
+                    reserved.merge(diskId + '\u0000' + owner, reservation.getValue(), Long::sum);
+                }
+            }
+        }
+
+        long used = 0;
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            used += Math.max(entry.getValue(), reserved.getOrDefault(entry.getKey(), 0L));
+        }
+        for (Map.Entry<String, Long> entry : reserved.entrySet()) {
+            if (!measured.containsKey(entry.getKey())) {
+                used += entry.getValue();
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Debounces the saves of the {@link Run}s whose workspace allocations changed.
+ * <p>
+ * Saving a run rewrites its whole {@code build.xml}, so a Pipeline that allocates several workspaces in a row
+ * only marks its run as dirty, and the run is saved once, {@link #DELAY} after the first allocation.
+ * A pending save is done synchronously by {@link #flush(Run)} when a downstream step needs the allocations
+ * to be durable, and the pending saves are done when a build completes and when Jenkins shuts down.
+ * <p>
+ * A save that fails is retried with an exponential back-off, at most {@link #MAX_RETRIES} times.
+ * The pending save of a deleted build is dropped.
+ */
+@Restricted(NoExternalUse.class)
+public final class RunSaveDebouncer {
+
+    private static final Logger LOGGER = Logger.getLogger(RunSaveDebouncer.class.getName());
+
+    /**
+     * How long a save is delayed after the first change, in milliseconds.
+     */
+    static final long DELAY = SystemProperties.getLong(RunSaveDebouncer.class.getName() + ".delay",
+            TimeUnit.SECONDS.toMillis(1));
+
+    /**
+     * How many times a failed save is retried before the changes are given up.
+     */
+    static final int MAX_RETRIES = SystemProperties.getInteger(RunSaveDebouncer.class.getName() + ".maxRetries", 5);
+
+    private static final ConcurrentMap<String, Run<?, ?>> DIRTY = new ConcurrentHashMap<>();
+
+    // run externalizable id -> number of consecutive failed saves
+    private static final ConcurrentMap<String, Integer> FAILURES = new ConcurrentHashMap<>();
+
+    private RunSaveDebouncer() {
+        // do not instantiate
+    }
+
+    /**
+     * Marks the given run as modified, and schedules its save unless one is already pending.
+     *
+     * @param run the modified run
+     */
+    public static void markDirty(@Nonnull Run<?, ?> run) {
+        markDirty(run, DELAY);
+    }
+
+    private static void markDirty(@Nonnull Run<?, ?> run, long delay) {
+        String id = run.getExternalizableId();
+        if (DIRTY.putIfAbsent(id, run) == null) {
+            Timer.get().schedule(() -> save(id), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the given run now if it has a pending save.
+     *
+     * @param run the run to save
+     * @throws IOException if the run fails to save, the save stays pending
+     */
+    public static void flush(@Nonnull Run<?, ?> run) throws IOException {
+        flush(run.getExternalizableId());
+    }
+
+    /**
+     * Saves the run identified by the given id now if it has a pending save.
+     *
+     * @param id the run's externalizable id
+     * @throws IOException if the run fails to save, the save stays pending
+     */
+    public static void flush(@Nonnull String id) throws IOException {
+        Run<?, ?> dirty = DIRTY.remove(id);
+        if (dirty == null) {
+            return;
+        }
+        try {
+            dirty.save();
+            FAILURES.remove(id);
+        } catch (IOException | RuntimeException e) {
+            DIRTY.putIfAbsent(id, dirty);
+            throw e;
+        }
+    }
+
+    /**
+     * Saves all the runs that have a pending save.
+     */
+    public static void flushAll() {
+        List<String> batch = new ArrayList<>(DIRTY.keySet());
+        for (String id : batch) {
+            save(id);
+        }
+    }
+
+    /**
+     * @return the number of runs that have a pending save
+     */
+    public static int getPendingCount() {
+        return DIRTY.size();
+    }
+
+    static void save(@Nonnull String id) {
+        // remove it before saving, so that a concurrent change schedules another save
+        Run<?, ?> run = DIRTY.remove(id);
+        if (run == null) {
+            return;
+        }
+        try {
+            run.save();
+            FAILURES.remove(id);
+        } catch (IOException | RuntimeException e) {
+            int failures = FAILURES.merge(id, 1, Integer::sum);
+            if (failures > MAX_RETRIES) {
+                FAILURES.remove(id);
+                LOGGER.log(Level.WARNING, "Failed to save the workspace allocations of " + id
+                        + ", giving up after " + MAX_RETRIES + " retries", e);
+                return;
+            }
+            long delay = DELAY << Math.min(failures, 10);
+            LOGGER.log(Level.WARNING, "Failed to save the workspace allocations of " + id
+                    + ", retrying in " + delay + " ms", e);
+            markDirty(run, delay);
+        }
+    }
+
+    @Terminator
+    @SuppressWarnings("unused")
+    public static void flushOnShutdown() {
+        flushAll();
+    }
+
+    /**
+     * Saves the run once its build completes, if it still has a pending save, and drops the pending save
+     * of a deleted run.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+            save(run.getExternalizableId());
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            String id = run.getExternalizableId();
+            DIRTY.remove(id);
+            FAILURES.remove(id);
+        }
+    }
+
+    static void clear() {
+        DIRTY.clear();
+        FAILURES.clear();
+    }
+}
@@ -0,0 +1,311 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the space promised to the workspaces allocated on each {@link org.jenkinsci.plugins.ewm.definitions.Disk},
+ * keyed by the Disk Pool ID and the Disk ID, since the Disk IDs are only unique within a Disk Pool.
+ * <p>
+ * Files that a build hasn't written yet don't show up in the disk's usable space, so without this ledger
+ * a burst of allocations would all be sent to the same disk.
+ * The disk is selected, and probed, outside of any lock, see {@link #selectAndReserve}. Then, under the lock of its
+ * Disk Pool, the selected disk's space is checked again against the reservations made in the meantime, if any,
+ * and reserved. If it's no longer enough, another disk is selected.
+ * A reservation is held until the build that made it completes.
+ * It also expires after {@link #EXPIRATION}, so a build that never reports its completion can't pin the space forever.
+ */
+@Restricted(NoExternalUse.class)
+public final class SpaceReservationLedger {
+
+    /**
+     * How long a reservation may be held, in milliseconds.
+     * By then, most of the workspace has already been written and it's accounted in the disk's usable space.
+     */
+    static final long EXPIRATION = SystemProperties.getLong(SpaceReservationLedger.class.getName() + ".expiration",
+            TimeUnit.HOURS.toMillis(1));
+
+    // the entries are removed once they're empty
+    private static final ConcurrentMap<List<String>, Set<Reservation>> RESERVATIONS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, PoolLock> LOCKS = new ConcurrentHashMap<>();
+
+    private SpaceReservationLedger() {
+        // do not instantiate
+    }
+
+    /**
+     * Reserves space on the given disk.
+     *
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     * @param owner      the {@link Run#getExternalizableId()} of the build that allocated the workspace
+     * @param bytes      the reserved space in bytes
+     */
+    public static void reserve(@CheckForNull String diskPoolId, @Nonnull String diskId, @Nonnull String owner, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        RESERVATIONS.compute(keyOf(diskPoolId, diskId), (k, reservations) -> {
+            Set<Reservation> updated = reservations != null ? reservations : ConcurrentHashMap.newKeySet();
+            updated.add(new Reservation(owner, bytes));
+            return updated;
+        });
+    }
+
+    /**
+     * Selects a disk of the given Disk Pool and reserves space on it.
+     * <p>
+     * The admission is checked first, so an allocation that isn't admitted doesn't probe the disks.
+     * Then the selection, which usually probes the disks, runs outside of the Disk Pool's lock.
+     * Under the lock, the admission is checked again, then, if other reservations were made in the Disk Pool since
+     * the selection started, the selected disk's last known usable space is checked again against the reservations.
+     * If it's no longer enough, the disk is left out and another one is selected.
+     * If no space is reserved, the selection isn't serialized.
+     *
+     * @param diskPoolId the Disk Pool ID
+     * @param disks      the disks to select from
+     * @param owner      the {@link Run#getExternalizableId()} of the build that allocates the workspace
+     * @param bytes      the space to reserve on the selected disk, in bytes
+     * @param selection  the disk selection, e.g. the disk allocation strategy
+     * @param admission  the check made under the Disk Pool's lock, before the reservation, e.g. the quotas
+     * @return the selected disk
+     * @throws IOException if the disk selection or the admission fails,
+     *                     or if none of the disks has enough space left once the reservations are accounted
+     */
+    @Nonnull
+    public static Disk selectAndReserve(@Nonnull String diskPoolId, @Nonnull List<Disk> disks, @Nonnull String owner,
+                                        long bytes, @Nonnull Selection selection, @Nonnull Admission admission) throws IOException {
+        admission.check();
+        if (bytes <= 0) {
+            return selection.select(disks);
+        }
+        PoolLock lock = acquire(diskPoolId);
+        try {
+            List<Disk> candidates = new ArrayList<>(disks);
+            while (true) {
+                long version = lock.version;
+                Disk disk = selection.select(Collections.unmodifiableList(candidates));
+                synchronized (lock) {
+                    admission.check();
+                    if (version == lock.version || hasSpaceLeft(diskPoolId, disk, bytes)) {
+                        String diskId = disk.getDiskId();
+                        if (diskId != null) {
+                            reserve(diskPoolId, diskId, owner, bytes);
+                            lock.version++;
+                        }
+                        return disk;
+                    }
+                }
+                // reserved by a concurrent allocation in the meantime
+                if (!candidates.remove(disk) || candidates.isEmpty()) {
+                    throw new AbortException(String.format("None of the Disks of the Disk Pool '%s' has enough space left " +
+                            "for the workspace once the space reserved by the allocations in progress is accounted", diskPoolId));
+                }
+            }
+        } finally {
+            release(diskPoolId, lock);
+        }
+    }
+
+    /**
+     * Selects a disk of the given Disk Pool and reserves space on it, without any admission check.
+     *
+     * @see #selectAndReserve(String, List, String, long, Selection, Admission)
+     */
+    @Nonnull
+    public static Disk selectAndReserve(@Nonnull String diskPoolId, @Nonnull List<Disk> disks, @Nonnull String owner,
+                                        long bytes, @Nonnull Selection selection) throws IOException {
+        return selectAndReserve(diskPoolId, disks, owner, bytes, selection, () -> {
+        });
+    }
+
+    /**
+     * Selects a disk, see {@link #selectAndReserve}.
+     */
+    @FunctionalInterface
+    public interface Selection {
+        /**
+         * @param candidates the disks to select from, it contains at least one element
+         * @return the selected disk, one of the candidates
+         * @throws IOException if the selection fails
+         */
+        @Nonnull
+        Disk select(@Nonnull List<Disk> candidates) throws IOException;
+    }
+
+    /**
+     * Checks whether an allocation may proceed, under the Disk Pool's lock, see {@link #selectAndReserve}.
+     */
+    @FunctionalInterface
+    public interface Admission {
+        void check() throws IOException;
+    }
+
+    /**
+     * Releases all the reservations made by the given owner.
+     *
+     * @param owner the {@link Run#getExternalizableId()} of the build that allocated the workspaces
+     */
+    public static void release(@Nonnull String owner) {
+        for (List<String> key : RESERVATIONS.keySet()) {
+            RESERVATIONS.computeIfPresent(key, (k, reservations) -> {
+                reservations.removeIf(reservation -> reservation.owner.equals(owner));
+                return reservations.isEmpty() ? null : reservations;
+            });
+        }
+    }
+
+    /**
+     * @param disk the disk entry
+     * @return the sum of the space reserved on the given disk, in bytes
+     */
+    public static long getReservedBytes(@Nonnull Disk disk) {
+        return getReservedBytes(disk.getDiskPoolId(), disk.getDiskId());
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     * @return the sum of the space reserved on the given disk, in bytes
+     */
+    public static long getReservedBytes(@CheckForNull String diskPoolId, @CheckForNull String diskId) {
+        long reserved = 0;
+        for (Reservation reservation : activeReservations(diskPoolId, diskId)) {
+            reserved += reservation.bytes;
+        }
+        return reserved;
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     * @return the space reserved on the given disk by each owner, in bytes
+     */
+    @Nonnull
+    public static Map<String, Long> getReservedBytesByOwner(@CheckForNull String diskPoolId, @CheckForNull String diskId) {
+        Map<String, Long> reserved = new HashMap<>();
+        for (Reservation reservation : activeReservations(diskPoolId, diskId)) {
+            reserved.merge(reservation.owner, reservation.bytes, Long::sum);
+        }
+        return reserved;
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @param diskId     the Disk ID
+     * @return the number of reservations held on the given disk
+     */
+    public static int getReservationCount(@CheckForNull String diskPoolId, @CheckForNull String diskId) {
+        return activeReservations(diskPoolId, diskId).size();
+    }
+
+    /**
+     * @return the number of disks with reservations, and of Disk Pools with allocations in progress
+     */
+    static int getEntryCount() {
+        return RESERVATIONS.size() + LOCKS.size();
+    }
+
+    @Nonnull
+    private static Set<Reservation> activeReservations(@CheckForNull String diskPoolId, @CheckForNull String diskId) {
+        if (diskId == null) {
+            return Collections.emptySet();
+        }
+        Set<Reservation> reservations = RESERVATIONS.computeIfPresent(keyOf(diskPoolId, diskId), (k, active) -> {
+            active.removeIf(reservation -> reservation.getAge() > EXPIRATION);
+            return active.isEmpty() ? null : active;
+        });
+        return reservations == null ? Collections.emptySet() : reservations;
+    }
+
+    /**
+     * @return {@code true} if the last known usable space of the given disk, minus the space reserved on it,
+     * is enough for the given size, or if its usable space isn't known
+     */
+    private static boolean hasSpaceLeft(@Nonnull String diskPoolId, @Nonnull Disk disk, long bytes) {
+        String masterMountPoint = disk.getMasterMountPoint();
+        Long usableSpace = masterMountPoint == null ? null : UsableSpaceSnapshot.getLastUsableSpace(masterMountPoint);
+        return usableSpace == null || usableSpace - getReservedBytes(diskPoolId, disk.getDiskId()) >= bytes;
+    }
+
+    private static PoolLock acquire(String diskPoolId) {
+        return LOCKS.compute(diskPoolId, (k, lock) -> {
+            PoolLock acquired = lock != null ? lock : new PoolLock();
+            acquired.users++;
+            return acquired;
+        });
+    }
+
+    private static void release(String diskPoolId, PoolLock lock) {
+        LOCKS.computeIfPresent(diskPoolId, (k, current) -> current == lock && --current.users == 0 ? null : current);
+    }
+
+    private static List<String> keyOf(String diskPoolId, String diskId) {
+        return Arrays.asList(diskPoolId, diskId);
+    }
+
+    /**
+     * The lock of a Disk Pool, held in {@link #LOCKS} while allocations are in progress in the Disk Pool.
+     */
+    private static final class PoolLock {
+
+        // guarded by LOCKS#compute
+        private int users;
+        // the number of reservations made in the Disk Pool, guarded by this
+        private volatile long version;
+    }
+
+    private static final class Reservation {
+
+        private final String owner;
+        private final long bytes;
+        private final long timestamp = System.nanoTime();
+
+        Reservation(String owner, long bytes) {
+            this.owner = owner;
+            this.bytes = bytes;
+        }
+
+        long getAge() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timestamp);
+        }
+    }
+
+    /**
+     * Releases the reservations of a build once it's completed or deleted.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+            release(run.getExternalizableId());
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            release(run.getExternalizableId());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory table holding the last known usable space of each {@link Disk} master mount point.
+ * The table is refreshed in the background by {@link PollingWork}, so the disk allocation strategies
+ * don't have to stat every disk of the pool on each allocation.
+ * The polling goes through the {@link DiskProber}, so a hung mount point doesn't delay the other ones.
+ */
+@Restricted(NoExternalUse.class)
+public final class UsableSpaceSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(UsableSpaceSnapshot.class.getName());
+
+    /**
+     * How often the master mount points are polled, in milliseconds.
+     */
+    static final long POLL_INTERVAL = SystemProperties.getLong(UsableSpaceSnapshot.class.getName() + ".pollInterval",
+            TimeUnit.SECONDS.toMillis(30));
+
+    /**
+     * How old an entry may get before it is considered stale and re-read on demand, in milliseconds.
+     * Covers the disks that were added to the global config after the last poll.
+     */
+    static final long MAX_AGE = SystemProperties.getLong(UsableSpaceSnapshot.class.getName() + ".maxAge",
+            2 * POLL_INTERVAL);
+
+    /**
+     * Weight of the last read in the smoothed read latency.
+     */
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private static final ConcurrentMap<String, Entry> TABLE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Double> LATENCIES = new ConcurrentHashMap<>();
+
+    private UsableSpaceSnapshot() {
+        // do not instantiate
+    }
+
+    /**
+     * Returns the usable space of the given master mount point.
+     * The value is served from the in-memory table, unless the entry is missing, stale,
+     * or the caller explicitly asked for a fresh value.
+     *
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @param forceFresh       if {@code true}, the usable space is always read from the file system
+     * @return the usable space in bytes
+     * @throws SecurityException if the usable space can't be read because of security reasons
+     * @see File#getUsableSpace
+     */
+    public static long getUsableSpace(@Nonnull String masterMountPoint, boolean forceFresh) {
+        if (!forceFresh) {
+            Entry entry = TABLE.get(masterMountPoint);
+            if (entry != null && entry.getAge() <= MAX_AGE) {
+                return entry.usableSpace;
+            }
+        }
+        return refresh(masterMountPoint);
+    }
+
+    /**
+     * Returns the last known usable space of the given master mount point, however old, without reading it.
+     *
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return the usable space in bytes, or {@code null} if it was never read
+     */
+    @CheckForNull
+    public static Long getLastUsableSpace(@Nonnull String masterMountPoint) {
+        Entry entry = TABLE.get(masterMountPoint);
+        return entry == null ? null : entry.usableSpace;
+    }
+
+    /**
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return {@code true} if {@link #getUsableSpace} serves the given master mount point from memory
+     */
+    public static boolean isFresh(@Nonnull String masterMountPoint) {
+        Entry entry = TABLE.get(masterMountPoint);
+        return entry != null && entry.getAge() <= MAX_AGE;
+    }
+
+    /**
+     * Reads the usable space of the given master mount point and stores it in the in-memory table.
+     *
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return the usable space in bytes
+     * @throws SecurityException if the usable space can't be read because of security reasons
+     */
+    public static long refresh(@Nonnull String masterMountPoint) {
+        long start = System.nanoTime();
+        long usableSpace = new File(masterMountPoint).getUsableSpace();
+        double latency = (System.nanoTime() - start) / 1e6;
+
+        TABLE.put(masterMountPoint, new Entry(usableSpace, System.nanoTime()));
+        LATENCIES.merge(masterMountPoint, latency,
+                (previous, last) -> previous * (1 - LATENCY_SMOOTHING) + last * LATENCY_SMOOTHING);
+        return usableSpace;
+    }
+
+    /**
+     * Returns the recent latency of reading the usable space of the given master mount point,
+     * smoothed with an exponentially weighted moving average.
+     *
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return the smoothed latency in milliseconds, or {@code 0} if the usable space was never read
+     */
+    public static double getLatency(@Nonnull String masterMountPoint) {
+        Double latency = LATENCIES.get(masterMountPoint);
+        return latency == null ? 0 : latency;
+    }
+
+    /**
+     * Polls the usable space of the given disks, and drops the entries of all the other master mount points.
+     *
+     * @param disks the disks defined in the Jenkins global config
+     * @throws IOException if the polling is interrupted
+     */
+    static void poll(@Nonnull List<Disk> disks) throws IOException {
+        Set<String> mountPoints = new HashSet<>();
+        for (Disk disk : disks) {
+            mountPoints.add(disk.getMasterMountPoint());
+        }
+        DiskProber.probe(disks, disk -> {
+            try {
+                return refresh(disk.getMasterMountPoint());
+            } catch (SecurityException e) {
+                LOGGER.log(Level.WARNING, "Can't retrieve usable space for " + disk.getMasterMountPoint(), e);
+                return 0L;
+            }
+        });
+        TABLE.keySet().retainAll(mountPoints);
+        LATENCIES.keySet().retainAll(mountPoints);
+    }
+
+    /**
+     * Stores the given usable space, as if it had been read the given time ago.
+     */
+    static void put(@Nonnull String masterMountPoint, long usableSpace, long ageMillis) {
+        TABLE.put(masterMountPoint, new Entry(usableSpace, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMillis)));
+    }
+
+    static void clear() {
+        TABLE.clear();
+        LATENCIES.clear();
+    }
+
+    /**
+     * @return one {@link Disk} for each distinct master mount point defined in the Jenkins global config
+     */
+    @Nonnull
+    static List<Disk> configuredDisks() {
+        Map<String, Disk> disks = new LinkedHashMap<>();
+        for (DiskPool diskPool : ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getDiskPools()) {
+            for (Disk disk : diskPool.getDisks()) {
+                String masterMountPoint = disk.getMasterMountPoint();
+                if (masterMountPoint != null) {
+                    disks.putIfAbsent(masterMountPoint, disk);
+                }
+            }
+        }
+        return new ArrayList<>(disks.values());
+    }
+
+    private static final class Entry {
+
+        private final long usableSpace;
+        private final long timestamp;
+
+        Entry(long usableSpace, long timestamp) {
+            this.usableSpace = usableSpace;
+            this.timestamp = timestamp;
+        }
+
+        long getAge() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timestamp);
+        }
+    }
+
+    /**
+     * Polls the usable space of every configured master mount point and drops the entries
+     * of the disks that are no longer defined in the Jenkins global config.
+     */
+    @Extension
+    public static class PollingWork extends AsyncPeriodicWork {
+
+        public PollingWork() {
+            super("External Workspace usable space polling");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return POLL_INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException {
+            poll(configuredDisks());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Functions;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Clones a workspace directory into another directory of the same Disk, from the Jenkins master.
+ * <p>
+ * The whole tree is first cloned with reflinks, through {@code cp --reflink=always}, which only copies
+ * the metadata on the file systems that support it, e.g. Btrfs or XFS.
+ * Otherwise, the read-only files are hard linked, and the other files are copied in parallel on {@link #THREADS} threads.
+ * <p>
+ * A hard linked file is shared by both workspaces: a build that writes it anyway, e.g. running as root,
+ * or after a {@code chmod u+w}, modifies it in both workspaces.
+ * <p>
+ * A reflink clone that doesn't complete within {@link #REFLINK_TIMEOUT}, or that is interrupted,
+ * fails and its partial copy is deleted, it doesn't fall back to a full copy.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceCloner {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceCloner.class.getName());
+
+    /**
+     * The number of files copied in parallel.
+     */
+    static final int THREADS = SystemProperties.getInteger(WorkspaceCloner.class.getName() + ".threads", 4);
+
+    /**
+     * Whether to try cloning the workspaces with reflinks first.
+     */
+    static final boolean REFLINK = SystemProperties.getBoolean(WorkspaceCloner.class.getName() + ".reflink", true);
+
+    /**
+     * How long a reflink clone may run before it's aborted, in milliseconds.
+     */
+    static final long REFLINK_TIMEOUT = SystemProperties.getLong(WorkspaceCloner.class.getName() + ".reflinkTimeout",
+            TimeUnit.HOURS.toMillis(1));
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "External Workspace clone"));
+
+    /**
+     * How a workspace was cloned.
+     */
+    public enum Method {
+        REFLINK, HARD_LINKS_AND_COPY
+    }
+
+    private WorkspaceCloner() {
+        // do not instantiate
+    }
+
+    /**
+     * Clones the source directory into the target directory.
+     *
+     * @param source the directory to clone
+     * @param target the clone, it must not exist
+     * @return how the directory was cloned
+     * @throws IOException          if the target exists, if the source can't be cloned,
+     *                              or if the reflink clone didn't complete within {@link #REFLINK_TIMEOUT}
+     * @throws InterruptedException if interrupted while cloning, the partial clone is deleted
+     */
+    @Nonnull
+    public static Method clone(@Nonnull Path source, @Nonnull Path target) throws IOException, InterruptedException {
+        if (!Files.isDirectory(source)) {
+            throw new IOException("The workspace to clone doesn't exist: " + source);
+        }
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        if (REFLINK && !Functions.isWindows() && cloneWithReflinks(source, target)) {
+            return Method.REFLINK;
+        }
+        try {
+            cloneWithHardLinksAndCopy(source, target);
+        } catch (IOException | InterruptedException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        return Method.HARD_LINKS_AND_COPY;
+    }
+
+    /**
+     * @return {@code true} if the source was cloned with reflinks,
+     * {@code false} if {@code cp} failed, e.g. the file system doesn't support reflinks
+     * @throws IOException          if the clone didn't complete within {@link #REFLINK_TIMEOUT}
+     * @throws InterruptedException if interrupted while cloning
+     */
+    private static boolean cloneWithReflinks(Path source, Path target) throws IOException, InterruptedException {
+        Process process;
+        try {
+            process = new ProcessBuilder("cp", "-R", "-p", "--reflink=always", source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Can't clone " + source + " with reflinks", e);
+            return false;
+        }
+        boolean completed;
+        try {
+            completed = process.waitFor(REFLINK_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // e.g. the build was aborted, cp must not keep on writing the partial clone
+            destroy(process);
+            deleteQuietly(target);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        if (!completed) {
+            destroy(process);
+            deleteQuietly(target);
+            throw new IOException(String.format("The reflink clone of %s didn't complete within %d ms", source, REFLINK_TIMEOUT));
+        }
+        if (process.exitValue() == 0) {
+            return true;
+        }
+        // remove what may have been cloned before the failure
+        deleteQuietly(target);
+        return false;
+    }
+
+    /**
+     * Kills the given process, and waits a bit for it to exit, so it's no longer writing once this method returns.
+     */
+    private static void destroy(Process process) {
+        process.destroyForcibly();
+        try {
+            if (!process.waitFor(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "The cp process didn't exit after it was killed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void cloneWithHardLinksAndCopy(Path source, Path target) throws IOException, InterruptedException {
+        List<Future<?>> copies = new ArrayList<>();
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectory(target.resolve(source.relativize(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path clone = target.resolve(source.relativize(file));
+                    if (attrs.isSymbolicLink()) {
+                        Files.createSymbolicLink(clone, Files.readSymbolicLink(file));
+                    } else if (attrs.isRegularFile() && isReadOnly(file) && tryHardLink(clone, file)) {
+                        return FileVisitResult.CONTINUE;
+                    } else if (attrs.isRegularFile()) {
+                        copies.add(EXECUTOR.submit(() -> {
+                            Files.copy(file, clone, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                            return null;
+                        }));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            for (Future<?> copy : copies) {
+                copy.cancel(true);
+            }
+        }
+    }
+
+    private static boolean isReadOnly(Path file) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(file, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posix == null) {
+            return !Files.isWritable(file);
+        }
+        Set<PosixFilePermission> permissions = posix.readAttributes().permissions();
+        return !permissions.contains(PosixFilePermission.OWNER_WRITE)
+                && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    private static boolean tryHardLink(Path link, Path existing) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // e.g. the file system doesn't support hard links, the file is copied instead
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Files.delete(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                        Files.delete(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete the partial clone " + path, e);
+        }
+    }
+}
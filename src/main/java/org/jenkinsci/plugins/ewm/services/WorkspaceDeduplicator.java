@@ -0,0 +1,477 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Deduplicates the identical files of the {@link ExternalWorkspace}s of a Disk, from the Jenkins master,
+ * for the Disks where {@link Disk#isDeduplicate()} is enabled.
+ * <p>
+ * Only the read-only files are deduplicated, since a hard link shares the file content between all its paths.
+ * Each file is hashed with SHA-256, and its first copy is copied into the {@link #STORE_DIRECTORY} of its Disk,
+ * named after its hash, mode, owner, group and modification time, so the linked files keep their own metadata.
+ * The stored file is a new inode, verified against the hash once copied, then the workspace files with the same name
+ * are replaced by hard links to it.
+ * The hashes are kept with the file size and modification time, so the unchanged files aren't hashed again.
+ * <p>
+ * A stored file is linked from the workspaces, which may still modify it, e.g. after a {@code chmod u+w}.
+ * So its metadata is checked before each link, and its content is hashed again once per pass before the first link:
+ * a stored file that doesn't match its name anymore is removed from the store, and isn't linked again.
+ * <p>
+ * The workspaces still in use by an {@code exws} step, see {@link ActiveWorkspaceCounter}, are skipped.
+ * The stored files that aren't linked from any workspace anymore are removed from the store.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceDeduplicator {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceDeduplicator.class.getName());
+
+    /**
+     * The content store, created in the master mount point of each deduplicated Disk.
+     */
+    public static final String STORE_DIRECTORY = ".exws-store";
+
+    /**
+     * How often the workspaces are deduplicated, in milliseconds.
+     */
+    static final long INTERVAL = SystemProperties.getLong(WorkspaceDeduplicator.class.getName() + ".interval",
+            TimeUnit.HOURS.toMillis(1));
+
+    /**
+     * The files smaller than this size, in bytes, aren't deduplicated.
+     */
+    static final long MIN_SIZE = SystemProperties.getLong(WorkspaceDeduplicator.class.getName() + ".minSize", 4096L);
+
+    /**
+     * A file modified more recently than this may still be written, so it isn't deduplicated yet.
+     */
+    private static final long MIN_AGE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ConcurrentMap<String, Map<Path, FileEntry>> HASHES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> RECLAIMED = new ConcurrentHashMap<>();
+
+    private WorkspaceDeduplicator() {
+        // do not instantiate
+    }
+
+    /**
+     * Deduplicates the files of the given workspaces, which are all on the given Disk.
+     *
+     * @param diskId           the Disk ID
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @param workspaces       the workspaces of the Disk
+     * @return the number of bytes reclaimed by this pass
+     * @throws IOException if the content store can't be created
+     */
+    static long deduplicate(@Nonnull String diskId, @Nonnull String masterMountPoint,
+                            @Nonnull Collection<ExternalWorkspace> workspaces) throws IOException {
+        Path store = getStoreDirectory(masterMountPoint);
+        Files.createDirectories(store);
+
+        Map<Path, FileEntry> previous = HASHES.getOrDefault(diskId, new ConcurrentHashMap<>());
+        Map<Path, FileEntry> current = new ConcurrentHashMap<>();
+        // the stored files whose content was verified by this pass
+        Set<Path> verified = new HashSet<>();
+        long reclaimed = 0;
+        for (ExternalWorkspace exws : workspaces) {
+            if (ActiveWorkspaceCounter.getByWorkspace(exws.getId()) > 0) {
+                // still written by a build, its files may change before they're linked
+                continue;
+            }
+            Path root;
+            try {
+                root = WorkspaceDeletionService.resolveWorkspace(exws);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Skipping the External Workspace " + exws.getId(), e);
+                continue;
+            }
+            if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            DeduplicationVisitor visitor = new DeduplicationVisitor(store, previous, current, verified);
+            try {
+                Files.walkFileTree(root, visitor);
+            } catch (NoSuchFileException e) {
+                // deleted in the meantime
+            }
+            reclaimed += visitor.reclaimed;
+        }
+        HASHES.put(diskId, current);
+        RECLAIMED.computeIfAbsent(diskId, k -> new AtomicLong()).addAndGet(reclaimed);
+
+        int removed = collectGarbage(store);
+        LOGGER.log(Level.FINE, "Deduplicated {0} files on Disk ID ''{1}'', reclaimed {2} bytes, removed {3} unused stored files",
+                new Object[]{current.size(), diskId, reclaimed, removed});
+        return reclaimed;
+    }
+
+    /**
+     * @param diskId the Disk ID
+     * @return the number of bytes reclaimed on the given Disk since Jenkins started
+     */
+    public static long getReclaimedBytes(@Nonnull String diskId) {
+        AtomicLong reclaimed = RECLAIMED.get(diskId);
+        return reclaimed == null ? 0 : reclaimed.get();
+    }
+
+    @Nonnull
+    static Path getStoreDirectory(@Nonnull String masterMountPoint) throws IOException {
+        return new File(masterMountPoint).getCanonicalFile().toPath().resolve(STORE_DIRECTORY);
+    }
+
+    static void clear() {
+        HASHES.clear();
+        RECLAIMED.clear();
+    }
+
+    /**
+     * Removes the stored files that are only linked from the store.
+     *
+     * @param store the content store
+     * @return the number of removed files
+     * @throws IOException if the store can't be walked
+     */
+    private static int collectGarbage(Path store) throws IOException {
+        List<Path> unused = new ArrayList<>();
+        Files.walkFileTree(store, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                try {
+                    if (((Number) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue() <= 1) {
+                        unused.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    // the link count isn't available, the store is kept as is
+                    return FileVisitResult.TERMINATE;
+                }
+            }
+        });
+        for (Path file : unused) {
+            Files.deleteIfExists(file);
+        }
+        return unused.size();
+    }
+
+    private static boolean isReadOnly(Path file) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(file, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posix == null) {
+            return !Files.isWritable(file);
+        }
+        Set<PosixFilePermission> permissions = posix.readAttributes().permissions();
+        return !permissions.contains(PosixFilePermission.OWNER_WRITE)
+                && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is supported by all Java platforms", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file, LinkOption.NOFOLLOW_LINKS)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static boolean setOwner(Path file, int uid, int gid) throws IOException {
+        try {
+            Map<String, Object> unix = Files.readAttributes(file, "unix:uid,gid", LinkOption.NOFOLLOW_LINKS);
+            if ((Integer) unix.get("uid") != uid) {
+                Files.setAttribute(file, "unix:uid", uid, LinkOption.NOFOLLOW_LINKS);
+            }
+            if ((Integer) unix.get("gid") != gid) {
+                Files.setAttribute(file, "unix:gid", gid, LinkOption.NOFOLLOW_LINKS);
+            }
+            return true;
+        } catch (FileSystemException e) {
+            // e.g. Jenkins doesn't run as root, the file is owned by another user
+            LOGGER.log(Level.FINE, "Can't keep the owner of " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * The hash of a file, valid as long as its size and modification time don't change.
+     */
+    private static final class FileEntry {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        FileEntry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified == attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    private static final class DeduplicationVisitor extends SimpleFileVisitor<Path> {
+
+        private final Path store;
+        private final Map<Path, FileEntry> previous;
+        private final Map<Path, FileEntry> current;
+        private final Set<Path> verified;
+        private long reclaimed;
+
+        DeduplicationVisitor(Path store, Map<Path, FileEntry> previous, Map<Path, FileEntry> current, Set<Path> verified) {
+            this.store = store;
+            this.previous = previous;
+            this.current = current;
+            this.verified = verified;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile() || attrs.size() < MIN_SIZE
+                    || System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() < MIN_AGE) {
+                return FileVisitResult.CONTINUE;
+            }
+            try {
+                if (!isReadOnly(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                FileEntry entry = previous.get(file);
+                if (entry == null || !entry.matches(attrs)) {
+                    entry = new FileEntry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash(file));
+                }
+                current.put(file, entry);
+                reclaimed += link(file, attrs, entry);
+            } catch (IOException e) {
+                // e.g. the file was deleted in the meantime, it's skipped until the next pass
+                LOGGER.log(Level.FINE, "Failed to deduplicate " + file, e);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            LOGGER.log(Level.FINE, "Failed to visit " + file, e);
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * Copies the given file into the store, or uses the stored file of the same content and metadata,
+         * then replaces the file with a link to the stored file.
+         *
+         * @return the number of reclaimed bytes
+         */
+        private long link(Path file, BasicFileAttributes attrs, FileEntry entry) throws IOException {
+            Map<String, Object> unix;
+            try {
+                unix = Files.readAttributes(file, "unix:mode,uid,gid", LinkOption.NOFOLLOW_LINKS);
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // the owner can't be kept, the file isn't deduplicated
+                return 0;
+            }
+            int mode = (Integer) unix.get("mode") & 07777;
+            int uid = (Integer) unix.get("uid");
+            int gid = (Integer) unix.get("gid");
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            String name = format("%s-%04o-%d-%d-%d", entry.hash, mode, uid, gid, lastModified);
+            Path stored = store.resolve(entry.hash.substring(0, 2)).resolve(name);
+
+            if (!Files.exists(stored, LinkOption.NOFOLLOW_LINKS)) {
+                if (!store(file, stored, entry, uid, gid)) {
+                    return 0;
+                }
+                // the stored copy takes as much space as the linked file frees, nothing is reclaimed yet
+                replace(file, stored, entry);
+                return 0;
+            }
+            if (Files.isSameFile(stored, file)) {
+                return 0;
+            }
+            if (!isIntact(stored, entry, mode, uid, gid, lastModified)) {
+                LOGGER.log(Level.WARNING, "The stored file {0} was modified, it''s removed from the store", stored);
+                Files.deleteIfExists(stored);
+                verified.remove(stored);
+                return 0;
+            }
+            return replace(file, stored, entry) ? attrs.size() : 0;
+        }
+
+        /**
+         * Copies the given file into the store, as a new inode, so the workspace file isn't shared with the store
+         * until it's replaced by a link.
+         *
+         * @return {@code true} if the file was stored, {@code false} if it changed while copied
+         * or if its owner can't be kept
+         */
+        private boolean store(Path file, Path stored, FileEntry entry, int uid, int gid) throws IOException {
+            Files.createDirectories(stored.getParent());
+            Path temporary = Files.createTempFile(stored.getParent(), stored.getFileName().toString(), ".tmp");
+            try {
+                Files.copy(file, temporary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (!entry.hash.equals(hash(temporary))) {
+                    // modified since it was hashed
+                    return false;
+                }
+                if (!setOwner(temporary, uid, gid)) {
+                    return false;
+                }
+                try {
+                    // unlike a move, fails if the file was stored in the meantime
+                    Files.createLink(stored, temporary);
+                } catch (FileAlreadyExistsException e) {
+                    return false;
+                }
+                verified.add(stored);
+                return true;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        /**
+         * @return {@code true} if the stored file still has the metadata and the content it's named after
+         */
+        private boolean isIntact(Path stored, FileEntry entry, int mode, int uid, int gid, long lastModified) throws IOException {
+            Map<String, Object> unix = Files.readAttributes(stored, "unix:mode,uid,gid,size,lastModifiedTime", LinkOption.NOFOLLOW_LINKS);
+            if (((Integer) unix.get("mode") & 07777) != mode || (Integer) unix.get("uid") != uid
+                    || (Integer) unix.get("gid") != gid || (Long) unix.get("size") != entry.size
+                    || ((FileTime) unix.get("lastModifiedTime")).toMillis() != lastModified) {
+                return false;
+            }
+            // the content may be modified and the metadata restored, it's hashed again once per pass
+            if (!verified.contains(stored)) {
+                if (!entry.hash.equals(hash(stored))) {
+                    return false;
+                }
+                verified.add(stored);
+            }
+            return true;
+        }
+
+        /**
+         * Replaces the given file with a link to the stored file, atomically, so it never disappears from the workspace.
+         *
+         * @return {@code true} if the file was replaced, {@code false} if it was modified since it was hashed
+         */
+        private boolean replace(Path file, Path stored, FileEntry entry) throws IOException {
+            BasicFileAttributes latest = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!entry.matches(latest)) {
+                return false;
+            }
+            Path temporary = file.resolveSibling('.' + file.getFileName().toString() + ".exws-dedup");
+            Files.deleteIfExists(temporary);
+            Files.createLink(temporary, stored);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Periodically deduplicates the registered workspaces of the Disks where it's enabled.
+     */
+    @Extension
+    public static class DeduplicationWork extends AsyncPeriodicWork {
+
+        public DeduplicationWork() {
+            super("External Workspace deduplication");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            for (DiskPool diskPool : ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getDiskPools()) {
+                String diskPoolId = diskPool.getDiskPoolId();
+                if (diskPoolId == null) {
+                    continue;
+                }
+                for (Disk disk : diskPool.getDisks()) {
+                    String diskId = disk.getDiskId();
+                    String masterMountPoint = disk.getMasterMountPoint();
+                    if (!disk.isDeduplicate() || diskId == null || masterMountPoint == null || DiskProber.isDegraded(disk)) {
+                        continue;
+                    }
+                    List<ExternalWorkspace> workspaces = new ArrayList<>();
+                    for (WorkspaceRegistry.Record record : WorkspaceRegistry.get().getByDisk(diskPoolId, diskId)) {
+                        workspaces.add(record.getWorkspace());
+                    }
+                    try {
+                        long reclaimed = deduplicate(diskId, masterMountPoint, workspaces);
+                        listener.getLogger().println(format("Reclaimed %d bytes on Disk ID '%s', %d bytes in total",
+                                reclaimed, diskId, getReclaimedBytes(diskId)));
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to deduplicate the External Workspaces of Disk ID '" + diskId + "'", e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Deletes the {@link ExternalWorkspace}s in the background, from the Jenkins master, through their master mount point.
+ * <p>
+ * Each Disk has its own pool of {@link #WALKERS} threads, that delete the top level entries of a workspace in parallel,
+ * and its own rate limit of {@link #DELETIONS_PER_SECOND} deleted files and directories,
+ * so that a cleanup never starves the builds running on the same Disk.
+ * The deleted workspaces are removed from the {@link WorkspaceRegistry}.
+ * <p>
+ * A workspace that is in use by a running {@code exws} step isn't deleted, and no {@code exws} step can start
+ * in a workspace whose deletion is pending, see {@link ActiveWorkspaceCounter#markDeleted}. Each pending workspace deletion
+ * is recorded in the {@link #PENDING_DIRECTORY} of its Disk until it completes, so the deletions interrupted
+ * by a restart of Jenkins are resumed by the {@link WorkspaceTrash.PurgeWork}.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceDeletionService {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceDeletionService.class.getName());
+
+    /**
+     * The number of directory trees deleted in parallel on each Disk.
+     */
+    static final int WALKERS = SystemProperties.getInteger(WorkspaceDeletionService.class.getName() + ".walkers", 2);
+
+    /**
+     * The maximum number of files and directories deleted per second on each Disk, {@code 0} for no limit.
+     */
+    static final int DELETIONS_PER_SECOND = SystemProperties.getInteger(WorkspaceDeletionService.class.getName() + ".deletionsPerSecond", 1000);
+
+    /**
+     * The directory, created in the master mount point of each Disk, that records the pending workspace deletions.
+     * Each file is named after a workspace id and holds the workspace path on the Disk.
+     */
+    public static final String PENDING_DIRECTORY = ".exws-pending-deletions";
+
+    // (Disk Pool ID, Disk ID) -> threads and rate limit of the Disk
+    private static final ConcurrentMap<List<String>, DiskDeleter> DELETERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, CompletableFuture<Void>> PENDING = new ConcurrentHashMap<>();
+
+    private WorkspaceDeletionService() {
+        // do not instantiate
+    }
+
+    /**
+     * Schedules the deletion of the given workspace and returns immediately.
+     * Scheduling a workspace whose deletion is still pending returns the pending deletion.
+     *
+     * @param exws the workspace to delete
+     * @return the deletion, completed once the workspace directory is deleted
+     * @throws IOException if the workspace is in use, if its path isn't within its master mount point,
+     *                     or if its pending deletion can't be recorded
+     */
+    @Nonnull
+    public static CompletableFuture<Void> delete(@Nonnull ExternalWorkspace exws) throws IOException {
+        markDeleted(exws);
+        try {
+            Path root = resolveWorkspace(exws);
+            Path record = getPendingDirectory(exws.getMasterMountPoint()).resolve(exws.getId());
+            Files.createDirectories(record.getParent());
+            Files.write(record, exws.getPathOnDisk().getBytes(StandardCharsets.UTF_8));
+            return deleteRecorded(exws.getDiskPoolId(), exws.getDiskId(), exws.getId(), root, record);
+        } catch (IOException | RuntimeException e) {
+            ActiveWorkspaceCounter.unmarkDeleted(exws.getId());
+            throw e;
+        }
+    }
+
+    /**
+     * Schedules again the workspace deletions recorded on the given Disk, e.g. the ones interrupted by a restart
+     * of Jenkins. A deletion that is still pending isn't scheduled again.
+     *
+     * @param diskPoolId       the Disk Pool ID
+     * @param diskId           the Disk ID
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return the number of recorded deletions
+     * @throws IOException if the recorded deletions can't be listed
+     */
+    static int resume(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull String masterMountPoint) throws IOException {
+        Path pending = getPendingDirectory(masterMountPoint);
+        if (!Files.isDirectory(pending, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(pending)) {
+            for (Path record : stream) {
+                String workspaceId = record.getFileName().toString();
+                String pathOnDisk;
+                try {
+                    pathOnDisk = new String(Files.readAllBytes(record), StandardCharsets.UTF_8);
+                } catch (NoSuchFileException e) {
+                    // completed in the meantime
+                    continue;
+                }
+                ExternalWorkspace exws = new ExternalWorkspace(workspaceId, diskPoolId, diskId, masterMountPoint, pathOnDisk);
+                Path root;
+                try {
+                    root = resolveWorkspace(exws);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Dropping the invalid pending deletion " + record, e);
+                    Files.deleteIfExists(record);
+                    continue;
+                }
+                if (ActiveWorkspaceCounter.markDeleted(workspaceId) > 0) {
+                    // resumed by the next purge
+                    LOGGER.log(Level.FINE, "Not resuming the deletion of the External Workspace {0} in use", root);
+                    continue;
+                }
+                deleteRecorded(diskPoolId, diskId, workspaceId, root, record);
+                count++;
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        return count;
+    }
+
+    @Nonnull
+    private static CompletableFuture<Void> deleteRecorded(@Nonnull String diskPoolId, @Nonnull String diskId,
+                                                          @Nonnull String workspaceId, @Nonnull Path root, @Nonnull Path record) {
+        // completed once the workspace is unregistered and unmarked
+        return deleteDirectory(diskPoolId, diskId, root).whenComplete((result, failure) -> {
+            try {
+                if (failure == null) {
+                    unregister(workspaceId);
+                    Files.deleteIfExists(record);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to remove the completed pending deletion " + record, e);
+            } finally {
+                ActiveWorkspaceCounter.unmarkDeleted(workspaceId);
+            }
+        });
+    }
+
+    /**
+     * Marks the given workspace as being deleted, so no {@code exws} step starts in it until the mark is removed.
+     *
+     * @param exws the workspace to delete
+     * @throws AbortException if an {@code exws} step is still running in the given workspace
+     */
+    static void markDeleted(@Nonnull ExternalWorkspace exws) throws AbortException {
+        int users = ActiveWorkspaceCounter.markDeleted(exws.getId());
+        if (users > 0) {
+            throw new AbortException(format("The workspace %s is in use by %d running exws step(s), it won't be deleted",
+                    exws.getCompleteWorkspacePath(), users));
+        }
+    }
+
+    /**
+     * Schedules the deletion of the given directory, on the threads of the given Disk, and returns immediately.
+     * Scheduling a directory whose deletion is still pending returns the pending deletion.
+     *
+     * @param diskPoolId the Disk Pool ID of the Disk
+     * @param diskId     the Disk ID whose threads and rate limit are used
+     * @param directory  the directory to delete
+     * @return the deletion, completed once the directory is deleted
+     */
+    @Nonnull
+    static CompletableFuture<Void> deleteDirectory(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull Path directory) {
+        String key = directory.toString();
+        CompletableFuture<Void> deletion = new CompletableFuture<>();
+        CompletableFuture<Void> pending = PENDING.putIfAbsent(key, deletion);
+        if (pending != null) {
+            return pending;
+        }
+        deletion.whenComplete((result, e) -> {
+            PENDING.remove(key, deletion);
+            WorkspaceSizeCalculator.forget(directory);
+            if (e != null) {
+                LOGGER.log(Level.WARNING, format("Failed to delete the External Workspace %s", directory), e);
+            }
+        });
+
+        DiskDeleter deleter = DELETERS.computeIfAbsent(Arrays.asList(diskPoolId, diskId), DiskDeleter::new);
+        CompletableFuture
+                .supplyAsync(() -> deleter.listChildren(directory), deleter.executor)
+                .thenCompose(children -> {
+                    List<CompletableFuture<Void>> walkers = new ArrayList<>();
+                    for (Path child : children) {
+                        walkers.add(CompletableFuture.runAsync(() -> deleter.deleteTree(child), deleter.executor));
+                    }
+                    return CompletableFuture.allOf(walkers.toArray(new CompletableFuture[0]));
+                })
+                .thenRunAsync(() -> deleter.deleteTree(directory), deleter.executor)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        deletion.completeExceptionally(e);
+                    } else {
+                        deletion.complete(null);
+                    }
+                });
+        return deletion;
+    }
+
+    /**
+     * @return the number of directories whose deletion is pending
+     */
+    public static int getPendingCount() {
+        return PENDING.size();
+    }
+
+    /**
+     * @param exws the workspace
+     * @return the workspace directory, as seen from the Jenkins master
+     * @throws IOException if the workspace directory isn't strictly within the master mount point
+     */
+    @Nonnull
+    static Path resolveWorkspace(@Nonnull ExternalWorkspace exws) throws IOException {
+        Path mountPoint = new File(exws.getMasterMountPoint()).getCanonicalFile().toPath();
+        Path root = new File(exws.getMasterMountPoint(), exws.getPathOnDisk()).getCanonicalFile().toPath();
+        if (!root.startsWith(mountPoint) || root.equals(mountPoint)) {
+            throw new IOException(format("The workspace path %s isn't within the master mount point %s", root, mountPoint));
+        }
+        return root;
+    }
+
+    @Nonnull
+    static Path getPendingDirectory(@Nonnull String masterMountPoint) throws IOException {
+        return new File(masterMountPoint).getCanonicalFile().toPath().resolve(PENDING_DIRECTORY);
+    }
+
+    static void unregister(@Nonnull ExternalWorkspace exws) {
+        unregister(exws.getId());
+    }
+
+    private static void unregister(@Nonnull String workspaceId) {
+        WorkspaceSizeCalculator.forget(workspaceId);
+        if (Jenkins.getInstanceOrNull() == null) {
+            return;
+        }
+        try {
+            WorkspaceRegistry.get().remove(workspaceId);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to remove the deleted External Workspace " + workspaceId + " from the registry", e);
+        }
+    }
+
+    /**
+     * The threads and the rate limit of a Disk.
+     */
+    private static final class DiskDeleter {
+
+        private final ThreadPoolExecutor executor;
+        private final RateLimiter rateLimiter = new RateLimiter(DELETIONS_PER_SECOND);
+
+        DiskDeleter(List<String> disk) {
+            executor = new ThreadPoolExecutor(WALKERS, WALKERS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(),
+                            format("External Workspace deletion on Disk %s of Disk Pool %s", disk.get(1), disk.get(0))));
+            // an idle Disk doesn't keep its threads
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        List<Path> listChildren(Path directory) {
+            List<Path> children = new ArrayList<>();
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                return children;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    children.add(child);
+                }
+            } catch (NoSuchFileException e) {
+                // deleted in the meantime
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return children;
+        }
+
+        void deleteTree(Path path) {
+            try {
+                if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    delete(path);
+                    return;
+                }
+                // the symbolic links are deleted, not followed
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        delete(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                        if (e != null) {
+                            throw e;
+                        }
+                        delete(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // deleted in the meantime
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void delete(Path path) throws IOException {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while deleting " + path);
+            }
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Spaces out the operations to at most the given number of operations per second.
+     */
+    static final class RateLimiter {
+
+        private final long intervalNanos;
+        private long next;
+
+        RateLimiter(int operationsPerSecond) {
+            this.intervalNanos = operationsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / operationsPerSecond : 0;
+            this.next = System.nanoTime();
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                // compared by difference, System#nanoTime may overflow
+                long slot = next - now > 0 ? next : now;
+                next = slot + intervalNanos;
+                wait = slot - now;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
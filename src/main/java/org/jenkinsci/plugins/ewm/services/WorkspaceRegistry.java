@@ -0,0 +1,665 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Fingerprint;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.ewm.facets.WorkspaceBrowserFacet;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.utils.RandomUtil;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the allocated {@link ExternalWorkspace}s, so that they can be looked up by ID, Disk Pool, Disk or job
+ * without loading the fingerprints.
+ * <p>
+ * The records are appended to a JSON lines log in the Jenkins root directory and indexed in memory.
+ * A removal is appended as a tombstone, and so is a renamed or deleted job.
+ * The log is compacted once most of its lines are dead. The tombstones are kept, so that a removed workspace
+ * isn't imported back from its fingerprint, which may outlive it.
+ * <p>
+ * The workspaces allocated before the registry existed are only known by their {@link WorkspaceBrowserFacet}.
+ * They are imported by a background scan of the fingerprints directory at startup,
+ * and on demand when a lookup by ID misses.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class WorkspaceRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceRegistry.class.getName());
+
+    private static final String OPERATION_ADD = "add";
+    private static final String OPERATION_REMOVE = "remove";
+    private static final String OPERATION_IMPORTED = "imported";
+    private static final String OPERATION_RENAME = "rename";
+    private static final String OPERATION_FORGET = "forget";
+
+    /**
+     * The maximum difference between the time in a workspace id and the time it was registered at.
+     */
+    private static final long TIMESTAMP_TOLERANCE = TimeUnit.MINUTES.toMillis(1);
+
+    private final File file;
+
+    // sorted, so the time-ordered ids can be range scanned by creation time
+    private final ConcurrentNavigableMap<String, Record> byId = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Set<String>> byDiskPool = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byDisk = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byJob = new ConcurrentHashMap<>();
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+    private boolean loaded;
+    private volatile boolean fingerprintsImported;
+    private int deadLines;
+
+    public WorkspaceRegistry() {
+        this(new File(Jenkins.get().getRootDir(), WorkspaceRegistry.class.getName() + ".log"));
+    }
+
+    WorkspaceRegistry(@Nonnull File file) {
+        this.file = file;
+    }
+
+    @Nonnull
+    public static WorkspaceRegistry get() {
+        return ExtensionList.lookupSingleton(WorkspaceRegistry.class);
+    }
+
+    /**
+     * Registers the given workspace. Registering the same workspace ID again, or a removed one, is a no-op.
+     *
+     * @param exws        the allocated workspace
+     * @param jobFullName the full name of the job that allocated the workspace
+     * @param buildNumber the number of the build that allocated the workspace
+     * @param timestamp   when the workspace was allocated, in milliseconds since the epoch
+     * @throws IOException if the record can't be appended to the log
+     */
+    public void register(@Nonnull ExternalWorkspace exws, @Nonnull String jobFullName, int buildNumber, long timestamp) throws IOException {
+        Record record = new Record(exws, jobFullName, buildNumber, timestamp);
+        synchronized (this) {
+            load();
+            if (byId.containsKey(exws.getId()) || removed.contains(exws.getId())) {
+                return;
+            }
+            append(record.toJSON());
+            index(record);
+        }
+    }
+
+    /**
+     * Removes the given workspace from the registry, e.g. once it's deleted from the disk.
+     *
+     * @param id the workspace ID
+     * @throws IOException if the tombstone can't be appended to the log
+     */
+    public synchronized void remove(@Nonnull String id) throws IOException {
+        load();
+        if (removed.contains(id)) {
+            return;
+        }
+        append(tombstone(id));
+        removed.add(id);
+        Record record = byId.get(id);
+        if (record != null) {
+            unindex(record);
+            deadLines++;
+            compactIfMostLinesAreDead();
+        }
+    }
+
+    /**
+     * @param id the workspace ID
+     * @return {@code true} if the workspace was removed from the registry
+     */
+    public boolean isRemoved(@Nonnull String id) {
+        ensureLoaded();
+        return removed.contains(id);
+    }
+
+    /**
+     * Moves the workspaces of a renamed or moved job, or of the jobs inside a renamed or moved folder.
+     *
+     * @param oldFullName the full name of the item before the change
+     * @param newFullName the full name of the item after the change
+     * @throws IOException if the change can't be appended to the log
+     */
+    public synchronized void rename(@Nonnull String oldFullName, @Nonnull String newFullName) throws IOException {
+        load();
+        if (!hasRecordsOf(oldFullName)) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("op", OPERATION_RENAME);
+        json.put("from", oldFullName);
+        json.put("to", newFullName);
+        append(json);
+        reattribute(oldFullName, newFullName);
+        // the compacted log holds the new names
+        deadLines++;
+        compactIfMostLinesAreDead();
+    }
+
+    /**
+     * Detaches the workspaces of a deleted job, or of the jobs inside a deleted folder, from their job.
+     * They stay registered, since they are still on the disk,
+     * but a new job with the same name doesn't inherit them.
+     *
+     * @param fullName the full name of the deleted item
+     * @throws IOException if the change can't be appended to the log
+     */
+    public synchronized void forget(@Nonnull String fullName) throws IOException {
+        load();
+        if (!hasRecordsOf(fullName)) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("op", OPERATION_FORGET);
+        json.put("job", fullName);
+        append(json);
+        reattribute(fullName, null);
+        deadLines++;
+        compactIfMostLinesAreDead();
+    }
+
+    /**
+     * Finds the workspace by its ID. On a miss, it's looked up in the fingerprints and imported,
+     * unless the fingerprints were already imported.
+     *
+     * @param id the workspace ID
+     * @return the workspace, or {@code null} if it isn't registered
+     */
+    @CheckForNull
+    public ExternalWorkspace getWorkspace(@Nonnull String id) {
+        Record record = getRecord(id);
+        if (record == null && !fingerprintsImported) {
+            record = importFingerprint(id);
+        }
+        return record == null ? null : record.workspace;
+    }
+
+    @CheckForNull
+    public Record getRecord(@Nonnull String id) {
+        ensureLoaded();
+        return byId.get(id);
+    }
+
+    @Nonnull
+    public List<Record> getByDiskPool(@Nonnull String diskPoolId) {
+        ensureLoaded();
+        return lookup(byDiskPool, diskPoolId);
+    }
+
+    @Nonnull
+    public List<Record> getByDisk(@Nonnull String diskPoolId, @Nonnull String diskId) {
+        ensureLoaded();
+        return lookup(byDisk, diskKey(diskPoolId, diskId));
+    }
+
+    @Nonnull
+    public List<Record> getByJob(@Nonnull String jobFullName) {
+        ensureLoaded();
+        return lookup(byJob, jobFullName);
+    }
+
+    /**
+     * Range scans the workspaces by their creation time, in creation order.
+     * Only the workspaces that have a time-ordered id, see {@link RandomUtil#generateTimeOrderedId()}, are returned.
+     *
+     * @param from the lower bound of the creation time, inclusive, in milliseconds since the epoch
+     * @param to   the upper bound of the creation time, exclusive, in milliseconds since the epoch
+     * @return the workspaces created within the given interval
+     */
+    @Nonnull
+    public List<Record> getCreatedBetween(long from, long to) {
+        ensureLoaded();
+        List<Record> records = new ArrayList<>();
+        if (from >= to) {
+            return records;
+        }
+        for (Record record : byId.subMap(RandomUtil.lowestTimeOrderedId(from), RandomUtil.lowestTimeOrderedId(to)).values()) {
+            // the ids generated before the time-ordered ids may fall within the range by chance
+            if (Math.abs(RandomUtil.getTimestamp(record.workspace.getId()) - record.timestamp) <= TIMESTAMP_TOLERANCE) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return all the registered workspaces
+     */
+    @Nonnull
+    public List<Record> getAll() {
+        ensureLoaded();
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Imports the workspaces whose {@link WorkspaceBrowserFacet} is stored in the local fingerprints directory.
+     * It only runs once, the completion is recorded in the log.
+     */
+    void importFingerprints() {
+        ensureLoaded();
+        if (fingerprintsImported) {
+            return;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+
+        Path fingerprints = new File(jenkins.getRootDir(), "fingerprints").toPath();
+        if (Files.isDirectory(fingerprints)) {
+            try {
+                Files.walkFileTree(fingerprints, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                        String id = fingerprintId(fingerprints.relativize(path));
+                        if (id != null && !byId.containsKey(id) && !removed.contains(id) && containsFacet(path)) {
+                            importFingerprint(id);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to import the External Workspaces from the fingerprints", e);
+                return;
+            }
+        }
+
+        synchronized (this) {
+            JSONObject marker = new JSONObject();
+            marker.put("op", OPERATION_IMPORTED);
+            try {
+                append(marker);
+                fingerprintsImported = true;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record the import of the External Workspaces from the fingerprints", e);
+            }
+        }
+    }
+
+    @CheckForNull
+    private Record importFingerprint(@Nonnull String id) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || removed.contains(id)) {
+            return null;
+        }
+        try {
+            Fingerprint fingerprint = jenkins._getFingerprint(id);
+            WorkspaceBrowserFacet facet = fingerprint == null ? null : fingerprint.getFacet(WorkspaceBrowserFacet.class);
+            if (facet == null) {
+                return null;
+            }
+            Fingerprint.BuildPtr original = fingerprint.getOriginal();
+            String jobFullName = original == null ? "" : original.getName();
+            int buildNumber = original == null ? 0 : original.getNumber();
+            register(facet.getWorkspace(), jobFullName, buildNumber, facet.getTimestamp());
+            return byId.get(id);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to import the External Workspace " + id + " from its fingerprint", e);
+            return null;
+        }
+    }
+
+    private static boolean containsFacet(@Nonnull Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(WorkspaceBrowserFacet.class.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param relative the fingerprint file path, relative to the fingerprints directory, e.g. {@code ab/cd/ef01...xml}
+     * @return the fingerprint's md5 hash string, or {@code null} if the path isn't a fingerprint file
+     */
+    @CheckForNull
+    static String fingerprintId(@Nonnull Path relative) {
+        if (relative.getNameCount() != 3) {
+            return null;
+        }
+        String fileName = relative.getFileName().toString();
+        if (!fileName.endsWith(".xml")) {
+            return null;
+        }
+        String id = relative.getName(0).toString() + relative.getName(1) + fileName.substring(0, fileName.length() - 4);
+        return id.matches("[0-9a-f]{32}") ? id : null;
+    }
+
+    private void ensureLoaded() {
+        synchronized (this) {
+            load();
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lines++;
+                try {
+                    replay(JSONObject.fromObject(line));
+                } catch (JSONException e) {
+                    // e.g. the last line was only partially written before a crash
+                    LOGGER.log(Level.WARNING, "Skipping a corrupted line of the External Workspace registry: " + line, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the External Workspace registry from " + file, e);
+            return;
+        }
+
+        deadLines = lines - byId.size() - removed.size();
+        compactIfMostLinesAreDead();
+    }
+
+    private void replay(@Nonnull JSONObject json) {
+        String operation = json.getString("op");
+        if (OPERATION_ADD.equals(operation)) {
+            index(Record.fromJSON(json));
+        } else if (OPERATION_REMOVE.equals(operation)) {
+            String id = json.getString("id");
+            removed.add(id);
+            Record record = byId.get(id);
+            if (record != null) {
+                unindex(record);
+            }
+        } else if (OPERATION_RENAME.equals(operation)) {
+            reattribute(json.getString("from"), json.getString("to"));
+        } else if (OPERATION_FORGET.equals(operation)) {
+            reattribute(json.getString("job"), null);
+        } else if (OPERATION_IMPORTED.equals(operation)) {
+            fingerprintsImported = true;
+        }
+    }
+
+    private void compactIfMostLinesAreDead() {
+        if (deadLines > byId.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with the live records and the tombstones only.
+     */
+    private void compact() {
+        File compacted = new File(file.getPath() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(compacted.toPath(), StandardCharsets.UTF_8)) {
+                for (Record record : byId.values()) {
+                    writer.write(record.toJSON().toString());
+                    writer.write('\n');
+                }
+                for (String id : removed) {
+                    writer.write(tombstone(id).toString());
+                    writer.write('\n');
+                }
+                if (fingerprintsImported) {
+                    JSONObject marker = new JSONObject();
+                    marker.put("op", OPERATION_IMPORTED);
+                    writer.write(marker.toString());
+                    writer.write('\n');
+                }
+            }
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deadLines = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact the External Workspace registry " + file, e);
+        }
+    }
+
+    private void append(@Nonnull JSONObject json) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create the directory " + parent);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(json.toString());
+            writer.write('\n');
+        }
+    }
+
+    @Nonnull
+    private static JSONObject tombstone(@Nonnull String id) {
+        JSONObject tombstone = new JSONObject();
+        tombstone.put("op", OPERATION_REMOVE);
+        tombstone.put("id", id);
+        return tombstone;
+    }
+
+    private boolean hasRecordsOf(@Nonnull String fullName) {
+        for (String jobFullName : byJob.keySet()) {
+            if (belongsTo(jobFullName, fullName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the records of the given job, or of the jobs inside the given folder, to another job name.
+     *
+     * @param oldFullName the full name of the job or folder
+     * @param newFullName the new full name of the job or folder, or {@code null} to detach the records from their job
+     */
+    private void reattribute(@Nonnull String oldFullName, @CheckForNull String newFullName) {
+        List<Record> records = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : byJob.entrySet()) {
+            if (belongsTo(entry.getKey(), oldFullName)) {
+                records.addAll(lookup(byJob, entry.getKey()));
+            }
+        }
+        for (Record record : records) {
+            String jobFullName = newFullName == null ? "" : newFullName + record.jobFullName.substring(oldFullName.length());
+            Record moved = new Record(record.workspace, jobFullName, record.buildNumber, record.timestamp);
+            String id = record.workspace.getId();
+            byId.put(id, moved);
+            addTo(byJob, jobFullName, id);
+            removeFrom(byJob, record.jobFullName, id);
+        }
+    }
+
+    private static boolean belongsTo(@Nonnull String jobFullName, @Nonnull String fullName) {
+        return jobFullName.equals(fullName) || jobFullName.startsWith(fullName + '/');
+    }
+
+    private void index(@Nonnull Record record) {
+        ExternalWorkspace exws = record.workspace;
+        byId.put(exws.getId(), record);
+        addTo(byDiskPool, exws.getDiskPoolId(), exws.getId());
+        addTo(byDisk, diskKey(exws.getDiskPoolId(), exws.getDiskId()), exws.getId());
+        addTo(byJob, record.jobFullName, exws.getId());
+    }
+
+    private void unindex(@Nonnull Record record) {
+        ExternalWorkspace exws = record.workspace;
+        byId.remove(exws.getId());
+        removeFrom(byDiskPool, exws.getDiskPoolId(), exws.getId());
+        removeFrom(byDisk, diskKey(exws.getDiskPoolId(), exws.getDiskId()), exws.getId());
+        removeFrom(byJob, record.jobFullName, exws.getId());
+    }
+
+    private static void addTo(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static void removeFrom(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    @Nonnull
+    private List<Record> lookup(ConcurrentMap<String, Set<String>> index, String key) {
+        Set<String> ids = index.get(key);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<Record> records = new ArrayList<>();
+        for (String id : ids) {
+            Record record = byId.get(id);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static String diskKey(String diskPoolId, String diskId) {
+        return diskPoolId + '\u0000' + diskId;
+    }
+
+    /**
+     * Imports the workspaces from the fingerprints in the background, once the jobs are loaded.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    @SuppressWarnings("unused")
+    public static void importFingerprintsInBackground() {
+        Timer.get().submit(() -> get().importFingerprints());
+    }
+
+    /**
+     * Moves the workspaces of the renamed or moved jobs, and detaches the workspaces of the deleted jobs.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            try {
+                get().forget(item.getFullName());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record the deletion of " + item.getFullName()
+                        + " in the External Workspace registry", e);
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            try {
+                get().rename(oldFullName, newFullName);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record the renaming of " + oldFullName + " to " + newFullName
+                        + " in the External Workspace registry", e);
+            }
+        }
+    }
+
+    /**
+     * A registered workspace, with the build that allocated it.
+     */
+    public static final class Record {
+
+        private final ExternalWorkspace workspace;
+        private final String jobFullName;
+        private final int buildNumber;
+        private final long timestamp;
+
+        Record(@Nonnull ExternalWorkspace workspace, @Nonnull String jobFullName, int buildNumber, long timestamp) {
+            this.workspace = workspace;
+            this.jobFullName = jobFullName;
+            this.buildNumber = buildNumber;
+            this.timestamp = timestamp;
+        }
+
+        @Nonnull
+        public ExternalWorkspace getWorkspace() {
+            return workspace;
+        }
+
+        @Nonnull
+        public String getJobFullName() {
+            return jobFullName;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Nonnull
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("op", OPERATION_ADD);
+            json.put("id", workspace.getId());
+            json.put("diskPoolId", workspace.getDiskPoolId());
+            json.put("diskId", workspace.getDiskId());
+            json.put("masterMountPoint", workspace.getMasterMountPoint());
+            json.put("pathOnDisk", workspace.getPathOnDisk());
+            json.put("job", jobFullName);
+            json.put("build", buildNumber);
+            json.put("timestamp", timestamp);
+            return json;
+        }
+
+        @Nonnull
+        static Record fromJSON(@Nonnull JSONObject json) {
+            ExternalWorkspace workspace = new ExternalWorkspace(json.getString("id"), json.getString("diskPoolId"),
+                    json.getString("diskId"), json.getString("masterMountPoint"), json.getString("pathOnDisk"));
+            return new Record(workspace, json.getString("job"), json.getInt("build"), json.getLong("timestamp"));
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the disk usage of the {@link ExternalWorkspace}s, from the Jenkins master.
+ * <p>
+ * The directory trees are walked in parallel on a dedicated fork/join pool of {@link #PARALLELISM} threads.
+ * The sizes of the files directly within each directory are cached with the directory's modification time,
+ * so a directory whose entries didn't change since the last walk isn't listed again, only its sub-directories are
+ * checked. A file modified in place doesn't change its directory's modification time, so its new size is only seen
+ * once an entry of that directory is added, removed or renamed. At most {@link #MAX_CACHED_DIRECTORIES} directories
+ * are cached, the least recently walked ones are evicted first.
+ * <p>
+ * The sizes of the registered workspaces are refreshed by {@link AccountingWork}, except on the degraded Disks.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceSizeCalculator {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceSizeCalculator.class.getName());
+
+    /**
+     * The number of threads that walk the workspaces.
+     */
+    static final int PARALLELISM = SystemProperties.getInteger(WorkspaceSizeCalculator.class.getName() + ".parallelism", 4);
+
+    /**
+     * How often the sizes of the registered workspaces are refreshed, in milliseconds.
+     */
+    static final long INTERVAL = SystemProperties.getLong(WorkspaceSizeCalculator.class.getName() + ".interval",
+            TimeUnit.MINUTES.toMillis(15));
+
+    /**
+     * A directory modified more recently than this isn't cached, as it may be modified again within the
+     * resolution of its modification time.
+     */
+    private static final long MIN_CACHEABLE_AGE = TimeUnit.SECONDS.toMillis(2);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    /**
+     * The maximum number of directories whose entries are cached.
+     */
+    static final int MAX_CACHED_DIRECTORIES = SystemProperties.getInteger(
+            WorkspaceSizeCalculator.class.getName() + ".maxCachedDirectories", 100000);
+
+    // guarded by DIRECTORIES, lowered by the tests
+    static int maxCachedDirectories = MAX_CACHED_DIRECTORIES;
+
+    private static final Map<Path, DirectoryEntry> DIRECTORIES = new LinkedHashMap<Path, DirectoryEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, DirectoryEntry> eldest) {
+            return size() > maxCachedDirectories;
+        }
+    };
+    private static final ConcurrentMap<String, Size> SIZES = new ConcurrentHashMap<>();
+
+    private WorkspaceSizeCalculator() {
+        // do not instantiate
+    }
+
+    /**
+     * Measures the given workspace and stores its size.
+     * A workspace that can't be walked is stored with a size of {@code 0}, so it isn't accounted as unmeasured
+     * until its next measurement.
+     *
+     * @param exws the workspace
+     * @return the workspace size in bytes, {@code 0} if the workspace doesn't exist
+     * @throws IOException if the workspace can't be walked
+     */
+    public static long measure(@Nonnull ExternalWorkspace exws) throws IOException {
+        long bytes = 0;
+        try {
+            bytes = measure(new File(exws.getMasterMountPoint(), exws.getPathOnDisk()).toPath());
+            return bytes;
+        } finally {
+            SIZES.put(exws.getId(), new Size(bytes, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Measures the given directory.
+     *
+     * @param directory the directory
+     * @return the sum of the sizes of the regular files under the given directory, in bytes
+     * @throws IOException if the directory can't be walked
+     */
+    public static long measure(@Nonnull Path directory) throws IOException {
+        try {
+            return POOL.invoke(new SizeTask(directory.toAbsolutePath()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param id the workspace id
+     * @return the last measured size of the workspace, or {@code null} if it wasn't measured yet
+     */
+    @CheckForNull
+    public static Size getSize(@Nonnull String id) {
+        return SIZES.get(id);
+    }
+
+    /**
+     * Forgets the cached sizes of the given directory and of its sub-directories, e.g. once it's deleted.
+     *
+     * @param directory the directory
+     */
+    public static void forget(@Nonnull Path directory) {
+        Path absolute = directory.toAbsolutePath();
+        synchronized (DIRECTORIES) {
+            DIRECTORIES.keySet().removeIf(path -> path.startsWith(absolute));
+        }
+    }
+
+    /**
+     * Forgets the last measured size of the given workspace.
+     *
+     * @param id the workspace id
+     */
+    public static void forget(@Nonnull String id) {
+        SIZES.remove(id);
+    }
+
+    static int getCachedDirectoryCount() {
+        synchronized (DIRECTORIES) {
+            return DIRECTORIES.size();
+        }
+    }
+
+    static void clear() {
+        synchronized (DIRECTORIES) {
+            DIRECTORIES.clear();
+        }
+        SIZES.clear();
+    }
+
+    @CheckForNull
+    private static DirectoryEntry getCached(@Nonnull Path directory) {
+        synchronized (DIRECTORIES) {
+            return DIRECTORIES.get(directory);
+        }
+    }
+
+    private static void putCached(@Nonnull Path directory, @CheckForNull DirectoryEntry entry) {
+        synchronized (DIRECTORIES) {
+            if (entry == null) {
+                DIRECTORIES.remove(directory);
+            } else {
+                DIRECTORIES.put(directory, entry);
+            }
+        }
+    }
+
+    /**
+     * The measured size of a workspace.
+     */
+    public static final class Size {
+
+        private final long bytes;
+        private final long timestamp;
+
+        Size(long bytes, long timestamp) {
+            this.bytes = bytes;
+            this.timestamp = timestamp;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return when the size was measured, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * The sizes of the files directly within a directory, and its sub-directories.
+     */
+    private static final class DirectoryEntry {
+
+        private final long lastModified;
+        private final long filesBytes;
+        private final List<Path> subDirectories;
+
+        DirectoryEntry(long lastModified, long filesBytes, List<Path> subDirectories) {
+            this.lastModified = lastModified;
+            this.filesBytes = filesBytes;
+            this.subDirectories = subDirectories;
+        }
+    }
+
+    private static final class SizeTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+
+        SizeTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected Long compute() {
+            DirectoryEntry entry;
+            try {
+                entry = read(directory);
+            } catch (NoSuchFileException e) {
+                // the build may delete directories while they are walked
+                putCached(directory, null);
+                return 0L;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<SizeTask> subTasks = new ArrayList<>(entry.subDirectories.size());
+            for (Path subDirectory : entry.subDirectories) {
+                subTasks.add(new SizeTask(subDirectory));
+            }
+            long bytes = entry.filesBytes;
+            for (SizeTask subTask : invokeAll(subTasks)) {
+                bytes += subTask.join();
+            }
+            return bytes;
+        }
+
+        private static DirectoryEntry read(Path directory) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isDirectory()) {
+                return new DirectoryEntry(0, attributes.isRegularFile() ? attributes.size() : 0, Collections.emptyList());
+            }
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            DirectoryEntry cached = getCached(directory);
+            if (cached != null && cached.lastModified == lastModified) {
+                return cached;
+            }
+
+            long filesBytes = 0;
+            List<Path> subDirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes childAttributes;
+                    try {
+                        childAttributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (childAttributes.isDirectory()) {
+                        subDirectories.add(child);
+                    } else if (childAttributes.isRegularFile()) {
+                        filesBytes += childAttributes.size();
+                    }
+                }
+            }
+            DirectoryEntry entry = new DirectoryEntry(lastModified, filesBytes, subDirectories);
+            putCached(directory, System.currentTimeMillis() - lastModified >= MIN_CACHEABLE_AGE ? entry : null);
+            return entry;
+        }
+    }
+
+    /**
+     * Periodically measures the workspaces of the {@link WorkspaceRegistry} on the Disks defined in the Jenkins
+     * global config, starting right after Jenkins starts.
+     * The degraded Disks are skipped, so a hung mount point doesn't hold the walking threads.
+     */
+    @Extension
+    public static class AccountingWork extends AsyncPeriodicWork {
+
+        public AccountingWork() {
+            super("External Workspace disk usage accounting");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return INTERVAL;
+        }
+
+        @Override
+        public long getInitialDelay() {
+            // right after startup, the quotas account the unmeasured workspaces with their estimated size
+            return 0;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            for (DiskPool diskPool : ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getDiskPools()) {
+                String diskPoolId = diskPool.getDiskPoolId();
+                if (diskPoolId == null) {
+                    continue;
+                }
+                for (Disk disk : diskPool.getDisks()) {
+                    String diskId = disk.getDiskId();
+                    if (diskId == null) {
+                        continue;
+                    }
+                    for (WorkspaceRegistry.Record record : WorkspaceRegistry.get().getByDisk(diskPoolId, diskId)) {
+                        // the Disk may be flagged as degraded while its workspaces are walked
+                        if (DiskProber.isDegraded(disk)) {
+                            break;
+                        }
+                        try {
+                            measure(record.getWorkspace());
+                        } catch (IOException | RuntimeException e) {
+                            LOGGER.log(Level.FINE, "Failed to measure the External Workspace " + record.getWorkspace().getId(), e);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the size of the external workspaces at the end of each {@code exws} body, per job and per Disk Pool,
+ * and predicts the size of the next workspace allocated by the job.
+ * <p>
+ * Each job and Disk Pool pair keeps an exponentially weighted mean and variance of the recorded sizes.
+ * The prediction is an estimate of their 95th percentile, i.e. the mean plus 1.645 standard deviations.
+ * The history is saved in the Jenkins root directory, so the predictions survive a restart.
+ * The save is delayed by {@link #SAVE_DELAY} after a change, so that the sizes recorded meanwhile
+ * are saved together, and a pending save is done when Jenkins shuts down.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceSizeHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceSizeHistory.class.getName());
+
+    /**
+     * Weight of the last recorded size in the mean and the variance.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Number of standard deviations above the mean of the 95th percentile of a normal distribution.
+     */
+    private static final double P95_DEVIATIONS = 1.645;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /**
+     * Separates the job full name from the Disk Pool ID in the keys. The job names can't contain it.
+     */
+    private static final char SEPARATOR = '#';
+
+    /**
+     * How long the save of the history is delayed after a change, in milliseconds.
+     */
+    static final long SAVE_DELAY = SystemProperties.getLong(WorkspaceSizeHistory.class.getName() + ".saveDelay",
+            TimeUnit.SECONDS.toMillis(30));
+
+    private static final ConcurrentMap<String, Model> MODELS = new ConcurrentHashMap<>();
+
+    /**
+     * The job full names of the workspaces waiting to be measured, by workspace ID.
+     */
+    private static final ConcurrentMap<String, String> PENDING = new ConcurrentHashMap<>();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "External Workspace size recorder"));
+
+    private static final AtomicBoolean SAVE_PENDING = new AtomicBoolean();
+
+    private static volatile boolean loaded;
+
+    private WorkspaceSizeHistory() {
+        // do not instantiate
+    }
+
+    /**
+     * Measures the given workspace in the background, then records its size.
+     * The requests for a workspace that is still waiting to be measured are coalesced,
+     * its size is recorded once for the last job that used it.
+     *
+     * @param jobFullName the full name of the job that used the workspace
+     * @param exws        the workspace
+     * @see WorkspaceSizeCalculator#measure(ExternalWorkspace)
+     */
+    public static void recordAsync(@Nonnull String jobFullName, @Nonnull ExternalWorkspace exws) {
+        if (PENDING.put(exws.getId(), jobFullName) != null) {
+            return;
+        }
+        EXECUTOR.submit(() -> {
+            // removed before measuring, so that a later request measures the workspace again
+            String lastJobFullName = PENDING.remove(exws.getId());
+            File workspace = new File(exws.getCompleteWorkspacePath());
+            try {
+                if (workspace.isDirectory()) {
+                    record(lastJobFullName, exws.getDiskPoolId(), WorkspaceSizeCalculator.measure(exws));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to record the size of the workspace " + workspace, e);
+            }
+        });
+    }
+
+    /**
+     * Records the size of a workspace used by the given job.
+     *
+     * @param jobFullName the full name of the job that used the workspace
+     * @param diskPoolId  the Disk Pool ID where the workspace was allocated
+     * @param bytes       the workspace size in bytes
+     */
+    static void record(@Nonnull String jobFullName, @Nonnull String diskPoolId, long bytes) {
+        load();
+        MODELS.compute(key(jobFullName, diskPoolId), (k, model) -> model == null ? new Model(bytes) : model.update(bytes));
+        scheduleSave();
+    }
+
+    /**
+     * Predicts the size of the next workspace allocated by the given job.
+     *
+     * @param jobFullName the full name of the job
+     * @param diskPoolId  the Disk Pool ID
+     * @return the predicted workspace size in MB, or {@code 0} if the job didn't record any workspace size yet
+     */
+    public static long predictMegaBytes(@Nonnull String jobFullName, @Nonnull String diskPoolId) {
+        load();
+        Model model = MODELS.get(key(jobFullName, diskPoolId));
+        if (model == null) {
+            return 0;
+        }
+        double bytes = model.mean + P95_DEVIATIONS * Math.sqrt(model.variance);
+        return (long) Math.ceil(bytes / MEGABYTE);
+    }
+
+    /**
+     * @param jobFullName the full name of the job
+     * @param diskPoolId  the Disk Pool ID
+     * @return the mean size of the workspaces recorded by the given job, in bytes,
+     * or {@code 0} if the job didn't record any workspace size yet
+     */
+    public static long getMeanBytes(@Nonnull String jobFullName, @Nonnull String diskPoolId) {
+        load();
+        Model model = MODELS.get(key(jobFullName, diskPoolId));
+        return model == null ? 0 : (long) model.mean;
+    }
+
+    private static String key(@Nonnull String jobFullName, @Nonnull String diskPoolId) {
+        return jobFullName + SEPARATOR + diskPoolId;
+    }
+
+    /**
+     * Moves the history of a renamed or moved job, or of the jobs inside a renamed or moved folder.
+     *
+     * @param oldFullName the full name of the item before the change
+     * @param newFullName the full name of the item after the change
+     * @return {@code true} if some history was moved
+     */
+    static boolean rename(@Nonnull String oldFullName, @Nonnull String newFullName) {
+        load();
+        Map<String, Model> moved = new HashMap<>();
+        for (Iterator<Map.Entry<String, Model>> it = MODELS.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Model> entry = it.next();
+            String key = entry.getKey();
+            if (belongsTo(key, oldFullName)) {
+                moved.put(newFullName + key.substring(oldFullName.length()), entry.getValue());
+                it.remove();
+            }
+        }
+        MODELS.putAll(moved);
+        return !moved.isEmpty();
+    }
+
+    /**
+     * Forgets the history of a deleted job, or of the jobs inside a deleted folder.
+     *
+     * @param fullName the full name of the deleted item
+     * @return {@code true} if some history was forgotten
+     */
+    static boolean forget(@Nonnull String fullName) {
+        load();
+        return MODELS.keySet().removeIf(key -> belongsTo(key, fullName));
+    }
+
+    private static boolean belongsTo(@Nonnull String key, @Nonnull String fullName) {
+        return key.startsWith(fullName + SEPARATOR) || key.startsWith(fullName + '/');
+    }
+
+    static void clear() {
+        MODELS.clear();
+    }
+
+    @CheckForNull
+    private static XmlFile getConfigFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(Jenkins.XSTREAM2, new File(jenkins.getRootDir(), WorkspaceSizeHistory.class.getName() + ".xml"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        XmlFile file = getConfigFile();
+        if (file == null) {
+            return;
+        }
+        loaded = true;
+        if (file.exists()) {
+            try {
+                MODELS.putAll((Map<String, Model>) file.read());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to load the workspace size history from " + file, e);
+            }
+        }
+    }
+
+    private static void scheduleSave() {
+        if (SAVE_PENDING.compareAndSet(false, true)) {
+            Timer.get().schedule(WorkspaceSizeHistory::flush, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the history now if it has a pending save.
+     */
+    static void flush() {
+        // reset it before saving, so that a concurrent change schedules another save
+        if (SAVE_PENDING.compareAndSet(true, false)) {
+            save();
+        }
+    }
+
+    @Terminator
+    @SuppressWarnings("unused")
+    public static void flushOnShutdown() {
+        flush();
+    }
+
+    private static synchronized void save() {
+        XmlFile file = getConfigFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(new TreeMap<>(MODELS));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the workspace size history to " + file, e);
+        }
+    }
+
+    /**
+     * Exponentially weighted mean and variance of the sizes recorded for a job and Disk Pool pair, in bytes.
+     */
+    static final class Model {
+
+        private final double mean;
+        private final double variance;
+
+        Model(double mean) {
+            this(mean, 0);
+        }
+
+        private Model(double mean, double variance) {
+            this.mean = mean;
+            this.variance = variance;
+        }
+
+        Model update(double bytes) {
+            double difference = bytes - mean;
+            double increment = SMOOTHING * difference;
+            return new Model(mean + increment, (1 - SMOOTHING) * (variance + difference * increment));
+        }
+    }
+
+    /**
+     * Forgets the history of the deleted jobs, and moves the history of the renamed or moved jobs.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            if (forget(item.getFullName())) {
+                scheduleSave();
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (rename(oldFullName, newFullName)) {
+                scheduleSave();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes the {@link ExternalWorkspace}s by renaming them into the {@link #TRASH_DIRECTORY} of their Disk,
+ * which is a single metadata operation, and purges the trash later through the {@link WorkspaceDeletionService}.
+ * <p>
+ * The trash lives on the same file system as the workspaces, so the trashed files keep being counted
+ * in the Disk's usable space until they are purged. The allocation strategies don't count on that space
+ * before it's actually reclaimed.
+ */
+@Restricted(NoExternalUse.class)
+public final class WorkspaceTrash {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceTrash.class.getName());
+
+    /**
+     * The trash directory, created in the master mount point of each Disk.
+     */
+    public static final String TRASH_DIRECTORY = ".exws-trash";
+
+    private WorkspaceTrash() {
+        // do not instantiate
+    }
+
+    /**
+     * Moves the given workspace to the trash of its Disk, and schedules the purge of the trashed directory.
+     * If the workspace can't be renamed atomically, e.g. because it's on another file system than the master
+     * mount point, it's deleted in the background instead.
+     *
+     * @param exws the workspace to remove
+     * @return the purge of the workspace, completed once its files are deleted
+     * @throws IOException if the workspace is in use, if its path isn't within its master mount point,
+     *                     or if the workspace can't be moved to the trash
+     */
+    @Nonnull
+    public static CompletableFuture<Void> moveToTrash(@Nonnull ExternalWorkspace exws) throws IOException {
+        WorkspaceDeletionService.markDeleted(exws);
+        Path trashed;
+        try {
+            Path root = WorkspaceDeletionService.resolveWorkspace(exws);
+            if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+                WorkspaceDeletionService.unregister(exws);
+                ActiveWorkspaceCounter.unmarkDeleted(exws.getId());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            Path trash = getTrashDirectory(exws.getMasterMountPoint());
+            Files.createDirectories(trash);
+            trashed = trash.resolve(exws.getId() + '.' + System.currentTimeMillis());
+            try {
+                Files.move(root, trashed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                LOGGER.log(Level.FINE, "Can't move the External Workspace " + root + " to the trash, deleting it in place", e);
+                // the workspace stays marked as being deleted until its deletion in place completes
+                return WorkspaceDeletionService.delete(exws);
+            }
+        } catch (IOException | RuntimeException e) {
+            ActiveWorkspaceCounter.unmarkDeleted(exws.getId());
+            throw e;
+        }
+        WorkspaceDeletionService.unregister(exws);
+        // the workspace directory is gone
+        ActiveWorkspaceCounter.unmarkDeleted(exws.getId());
+        return WorkspaceDeletionService.deleteDirectory(exws.getDiskPoolId(), exws.getDiskId(), trashed);
+    }
+
+    /**
+     * Schedules the purge of all the directories in the trash of the given Disk,
+     * e.g. the ones left behind by a restart of Jenkins.
+     *
+     * @param diskPoolId       the Disk Pool ID
+     * @param diskId           the Disk ID
+     * @param masterMountPoint the mounting point from Jenkins master to the disk
+     * @return the number of trashed directories
+     * @throws IOException if the trash can't be listed
+     */
+    static int purge(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull String masterMountPoint) throws IOException {
+        Path trash = getTrashDirectory(masterMountPoint);
+        if (!Files.isDirectory(trash, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(trash)) {
+            for (Path trashed : stream) {
+                // a directory whose purge is already pending isn't scheduled again
+                WorkspaceDeletionService.deleteDirectory(diskPoolId, diskId, trashed);
+                count++;
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        return count;
+    }
+
+    @Nonnull
+    static Path getTrashDirectory(@Nonnull String masterMountPoint) throws IOException {
+        return new File(masterMountPoint).getCanonicalFile().toPath().resolve(TRASH_DIRECTORY);
+    }
+
+    /**
+     * Periodically purges the trash of the Disks defined in the Jenkins global config,
+     * and resumes their pending workspace deletions.
+     */
+    @Extension
+    public static class PurgeWork extends AsyncPeriodicWork {
+
+        public PurgeWork() {
+            super("External Workspace trash purge");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(5);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            for (DiskPool diskPool : ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getDiskPools()) {
+                String diskPoolId = diskPool.getDiskPoolId();
+                for (Disk disk : diskPool.getDisks()) {
+                    String diskId = disk.getDiskId();
+                    String masterMountPoint = disk.getMasterMountPoint();
+                    if (diskPoolId == null || diskId == null || masterMountPoint == null || DiskProber.isDegraded(disk)) {
+                        continue;
+                    }
+                    try {
+                        purge(diskPoolId, diskId, masterMountPoint);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to purge the External Workspace trash of Disk ID '" + diskId + "'", e);
+                    }
+                    try {
+                        WorkspaceDeletionService.resume(diskPoolId, diskId, masterMountPoint);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to resume the External Workspace deletions of Disk ID '" + diskId + "'", e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable version of the {@link DiskPool}s defined in the Jenkins global config, with their index by ID.
+ * <p>
+ * A new snapshot is published by {@link ExwsAllocateStep.DescriptorImpl} each time the config changes.
+ * An allocation reads the snapshot once and uses it until it completes, so it never sees a half-updated config.
+ * <p>
+ * The snapshot also holds the round robin cursor of each Disk Pool, so the cursors are dropped with the snapshot.
+ */
+@Restricted(NoExternalUse.class)
+public final class DiskPoolsSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+    private final List<DiskPool> diskPools;
+    private final Map<String, DiskPool> diskPoolIndex;
+    private final Map<String, AtomicInteger> cursors;
+
+    DiskPoolsSnapshot(@CheckForNull List<DiskPool> diskPools) {
+        this.version = VERSIONS.incrementAndGet();
+        this.diskPools = diskPools == null
+                ? Collections.<DiskPool>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(diskPools));
+
+        Map<String, DiskPool> index = new HashMap<>();
+        Map<String, AtomicInteger> cursors = new HashMap<>();
+        for (DiskPool diskPool : this.diskPools) {
+            String diskPoolId = diskPool.getDiskPoolId();
+            if (diskPoolId != null) {
+                index.putIfAbsent(diskPoolId, diskPool);
+                cursors.putIfAbsent(diskPoolId, new AtomicInteger());
+            }
+        }
+        this.diskPoolIndex = Collections.unmodifiableMap(index);
+        this.cursors = Collections.unmodifiableMap(cursors);
+    }
+
+    /**
+     * @return the version of this snapshot. A config change always publishes a higher version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Nonnull
+    public List<DiskPool> getDiskPools() {
+        return diskPools;
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @return the first disk pool that has the given {@link DiskPool#getDiskPoolId()}, {@code null} otherwise
+     */
+    @CheckForNull
+    public DiskPool getDiskPool(@Nonnull String diskPoolId) {
+        return diskPoolIndex.get(diskPoolId);
+    }
+
+    /**
+     * @param diskPoolId the Disk Pool ID
+     * @return the round robin cursor of the disk pool that has the given {@link DiskPool#getDiskPoolId()},
+     * {@code null} otherwise
+     */
+    @CheckForNull
+    public AtomicInteger getCursor(@Nonnull String diskPoolId) {
+        return cursors.get(diskPoolId);
+    }
+}
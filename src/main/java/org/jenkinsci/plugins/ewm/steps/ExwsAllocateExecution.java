@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.ewm.steps;
 import com.google.inject.Inject;
 import com.synopsys.arc.jenkinsci.plugins.jobrestrictions.restrictions.JobRestriction;
 import hudson.AbortException;
+import hudson.BulkChange;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.model.Fingerprint;
@@ -17,6 +18,14 @@ import org.jenkinsci.plugins.ewm.definitions.Disk;
 import org.jenkinsci.plugins.ewm.definitions.DiskPool;
 import org.jenkinsci.plugins.ewm.facets.WorkspaceBrowserFacet;
 import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.services.AllocatedWorkspacesCache;
+import org.jenkinsci.plugins.ewm.services.FingerprintJournal;
+import org.jenkinsci.plugins.ewm.services.QuotaEnforcer;
+import org.jenkinsci.plugins.ewm.services.RunSaveDebouncer;
+import org.jenkinsci.plugins.ewm.services.WorkspaceCloner;
+import org.jenkinsci.plugins.ewm.services.WorkspaceRegistry;
+import org.jenkinsci.plugins.ewm.services.WorkspaceSizeCalculator;
+import org.jenkinsci.plugins.ewm.services.WorkspaceSizeHistory;
 import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.jenkinsci.plugins.workflow.support.steps.build.RunWrapper;
@@ -25,7 +34,9 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 
 import static hudson.Util.isRelativePath;
@@ -41,6 +52,8 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
 
     private static final long serialVersionUID = 1L;
 
+    private static final long MEGABYTE = 1024L * 1024L;
+
     @Inject(optional = true)
     private transient ExwsAllocateStep step;
 
@@ -54,6 +67,8 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
     @Override
     protected ExternalWorkspace run() throws Exception {
         ExternalWorkspace exws;
+        // pin the config for the whole allocation
+        DiskPoolsSnapshot config = step.getDescriptor().getSnapshot();
         RunWrapper selectedRunWrapper = step.getSelectedRun();
         if (selectedRunWrapper == null) {
             // this is the upstream job
@@ -62,9 +77,12 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
             if (diskPoolId == null) {
                 throw new AbortException("Disk Pool ID was not provided as step parameter");
             }
+            if (step.isClone()) {
+                listener.getLogger().println("WARNING: The 'clone' parameter was provided without the 'selectedRun' parameter. " +
+                        "The 'clone' parameter will be ignored. The step will allocate a new workspace.");
+            }
 
-            List<DiskPool> diskPools = step.getDescriptor().getDiskPools();
-            DiskPool diskPool = findDiskPool(diskPoolId, diskPools);
+            DiskPool diskPool = findDiskPool(diskPoolId, config);
 
             DiskAllocationStrategy strategy = step.getStrategy();
             if (strategy == null) {
@@ -73,8 +91,21 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
                 strategy = diskPool.getStrategy();
             }
 
+            if (strategy.getEstimatedWorkspaceSize() <= 0) {
+                long predictedWorkspaceSize = WorkspaceSizeHistory.predictMegaBytes(run.getParent().getFullName(), diskPoolId);
+                if (predictedWorkspaceSize > 0) {
+                    listener.getLogger().println(format("Using the predicted workspace size of %s MB, based on the previous builds", predictedWorkspaceSize));
+                    strategy = strategy.withEstimatedWorkspaceSize(predictedWorkspaceSize);
+                }
+            }
+
             listener.getLogger().println(format("Using Disk allocation strategy: '%s'", strategy.getDescriptor().getDisplayName()));
-            Disk disk = strategy.allocateDisk(diskPool.getDisks());
+            // the quotas are checked before any disk is probed, then again under the Disk Pool's lock along with
+            // the selected disk's space, so concurrent allocations don't overfill a disk nor exceed the quotas together
+            DiskAllocationStrategy selectedStrategy = strategy;
+            Disk disk = QuotaEnforcer.checkAndReserve(diskPool, diskPool.getDisks(), run.getParent().getFullName(),
+                    strategy.getEstimatedWorkspaceSize(), run.getExternalizableId(),
+                    candidates -> selectedStrategy.allocateDisk(candidates, run, listener));
 
             String diskId = disk.getDiskId();
             if (diskId == null) {
@@ -82,20 +113,7 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
                 throw new AbortException(message);
             }
 
-            String pathOnDisk;
-            String customPath = step.getPath();
-            if (customPath != null) {
-                pathOnDisk = computeCustomPath(customPath);
-
-            } else {
-                String workspaceTemplate = diskPool.getWorkspaceTemplate();
-                if (workspaceTemplate != null) {
-                    pathOnDisk = computePathBasedOnTemplate(workspaceTemplate);
-
-                } else {
-                    pathOnDisk = computeDefaultPathOnDisk(diskId, disk.getPhysicalPathOnDisk());
-                }
-            }
+            String pathOnDisk = computePathOnDisk(diskPool, diskId, disk);
 
             String masterMountPoint = disk.getMasterMountPoint();
             if (masterMountPoint == null) {
@@ -111,21 +129,30 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
                         "The 'diskPoolId' parameter will be ignored. The step will allocate the workspace used by the selected run.");
             }
 
-            Run<?, ?> selectedRun = selectedRunWrapper.getRawBuild();
-            if (selectedRun == null) {
-                throw new AbortException("The selected RunWrapper object contains a null Run. Possibly this run has been deleted in the meantime?");
-            }
-            ExwsAllocateActionImpl allocateAction = selectedRun.getAction(ExwsAllocateActionImpl.class);
-            if (allocateAction == null) {
-                String message = format("The selected run '%s' must have at least one call to the " +
-                        "exwsAllocate step in order to have a workspace usable by this job.", selectedRun);
-                throw new AbortException(message);
+            // resolve the selected run's workspaces from the cache, so that a fan-out of downstream jobs
+            // doesn't load the same build record each time
+            String selectedRunId = selectedRunWrapper.getExternalizableId();
+            AllocatedWorkspacesCache.Entry cached = AllocatedWorkspacesCache.get(selectedRunId);
+            if (cached == null) {
+                Run<?, ?> selectedRun = selectedRunWrapper.getRawBuild();
+                if (selectedRun == null) {
+                    throw new AbortException("The selected RunWrapper object contains a null Run. Possibly this run has been deleted in the meantime?");
+                }
+                ExwsAllocateActionImpl allocateAction = selectedRun.getAction(ExwsAllocateActionImpl.class);
+                if (allocateAction == null) {
+                    String message = format("The selected run '%s' must have at least one call to the " +
+                            "exwsAllocate step in order to have a workspace usable by this job.", selectedRun);
+                    throw new AbortException(message);
+                }
+                cached = AllocatedWorkspacesCache.put(selectedRun, allocateAction.getAllocatedWorkspaces());
             }
+            // the selected run's allocations must be on disk before this run relies on them
+            RunSaveDebouncer.flush(selectedRunId);
 
-            List<ExternalWorkspace> allocatedWorkspaces = allocateAction.getAllocatedWorkspaces();
+            List<ExternalWorkspace> allocatedWorkspaces = cached.getWorkspaces();
             if (allocatedWorkspaces.size() > 1) {
                 listener.getLogger().println(format("WARNING: The selected run '%s' have recorded multiple external workspace allocations. " +
-                        "Did you call exwsAllocate step multiple times in the same run? This downstream Jenkins job will use the first recorded workspace allocation.", selectedRun));
+                        "Did you call exwsAllocate step multiple times in the same run? This downstream Jenkins job will use the first recorded workspace allocation.", cached.getRunDisplayName()));
             }
 
             // this list always contains at least one element
@@ -133,7 +160,7 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
         }
 
         String diskPoolId = exws.getDiskPoolId();
-        DiskPool diskPool = findDiskPool(diskPoolId, step.getDescriptor().getDiskPools());
+        DiskPool diskPool = findDiskPool(diskPoolId, config);
 
         JobRestriction restriction = diskPool.getRestriction();
         if (!diskPool.getRestriction().canTake(run)) {
@@ -141,24 +168,104 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
             throw new AbortException(message);
         }
 
-        ExwsAllocateActionImpl allocateAction = run.getAction(ExwsAllocateActionImpl.class);
-        if (allocateAction == null) {
-            allocateAction = new ExwsAllocateActionImpl();
-            run.addAction(allocateAction);
+        if (selectedRunWrapper != null && step.isClone()) {
+            exws = cloneWorkspace(exws, diskPool);
+        }
+
+        // Run#save is synchronized on the run, so the action isn't modified while it's serialized
+        synchronized (run) {
+            ExwsAllocateActionImpl allocateAction = run.getAction(ExwsAllocateActionImpl.class);
+            if (allocateAction == null) {
+                allocateAction = new ExwsAllocateActionImpl();
+                run.addAction(allocateAction);
+            }
+            allocateAction.addAllocatedWorkspace(exws);
+            AllocatedWorkspacesCache.put(run, allocateAction.getAllocatedWorkspaces());
         }
-        allocateAction.addAllocatedWorkspace(exws);
-        run.save();
+        RunSaveDebouncer.markDirty(run);
 
         listener.getLogger().println(format("Selected Disk ID '%s' from the Disk Pool ID '%s'", exws.getDiskId(), diskPoolId));
         listener.getLogger().println(format("The path on Disk is: %s", exws.getPathOnDisk()));
 
         registerFingerprint(exws);
+        if (selectedRunWrapper == null || step.isClone()) {
+            WorkspaceRegistry.get().register(exws, run.getParent().getFullName(), run.getNumber(), System.currentTimeMillis());
+        }
 
         return exws;
     }
 
+    /**
+     * Clones the given upstream workspace into a new workspace of this run, on the same Disk.
+     * The new workspace path is computed the same way as for an upstream allocation.
+     *
+     * @param upstream the workspace of the selected run
+     * @param diskPool the disk pool of the selected run's workspace
+     * @return the cloned workspace
+     * @throws IOException          if the Disk isn't defined anymore, if a quota would be exceeded,
+     *                              or if the workspace can't be cloned
+     * @throws InterruptedException if interrupted while cloning
+     */
+    @Nonnull
+    private ExternalWorkspace cloneWorkspace(@Nonnull ExternalWorkspace upstream, @Nonnull DiskPool diskPool) throws IOException, InterruptedException {
+        Disk disk = null;
+        for (Disk candidate : diskPool.getDisks()) {
+            if (upstream.getDiskId().equals(candidate.getDiskId())) {
+                disk = candidate;
+                break;
+            }
+        }
+        if (disk == null) {
+            String message = format("Disk ID '%s' of the selected run's workspace is no longer defined in the Disk Pool ID '%s'", upstream.getDiskId(), upstream.getDiskPoolId());
+            throw new AbortException(message);
+        }
+
+        String pathOnDisk = computePathOnDisk(diskPool, upstream.getDiskId(), disk);
+        Path source = new File(upstream.getCompleteWorkspacePath()).toPath();
+        Path target = new File(upstream.getMasterMountPoint(), pathOnDisk).toPath();
+        if (target.normalize().equals(source.normalize())) {
+            throw new AbortException(format("The cloned workspace path %s is the same as the selected run's workspace path", pathOnDisk));
+        }
+
+        // the clone takes as much space as the selected run's workspace, it's checked against the quotas
+        // and reserved on the Disk as for an upstream allocation
+        long megaBytes = (WorkspaceSizeCalculator.measure(upstream) + MEGABYTE - 1) / MEGABYTE;
+        Disk upstreamDisk = disk;
+        QuotaEnforcer.checkAndReserve(diskPool, Collections.singletonList(upstreamDisk), run.getParent().getFullName(),
+                megaBytes, run.getExternalizableId(), candidates -> upstreamDisk);
+
+        WorkspaceCloner.Method method = WorkspaceCloner.clone(source, target);
+        listener.getLogger().println(format("Cloned the workspace of the selected run into %s, with %s", pathOnDisk,
+                method == WorkspaceCloner.Method.REFLINK ? "reflinks" : "hard links for the read-only files and copies for the other files"));
+        return new ExternalWorkspace(upstream.getDiskPoolId(), upstream.getDiskId(), upstream.getMasterMountPoint(), pathOnDisk);
+    }
+
+    /**
+     * Computes the workspace path on the given disk: the custom path provided as step parameter if any,
+     * or the path based on the Disk Pool's workspace template if defined, or the default path otherwise.
+     *
+     * @param diskPool the disk pool
+     * @param diskId   the disk id
+     * @param disk     the disk
+     * @return the workspace path on the disk
+     * @throws IOException if the path can't be computed
+     */
+    @Nonnull
+    private String computePathOnDisk(@Nonnull DiskPool diskPool, @Nonnull String diskId, @Nonnull Disk disk) throws IOException {
+        String customPath = step.getPath();
+        if (customPath != null) {
+            return computeCustomPath(customPath);
+        }
+        String workspaceTemplate = diskPool.getWorkspaceTemplate();
+        if (workspaceTemplate != null) {
+            return computePathBasedOnTemplate(workspaceTemplate);
+        }
+        return computeDefaultPathOnDisk(diskId, disk.getPhysicalPathOnDisk());
+    }
+
     /**
      * Registers a fingerprint for the given workspace's id.
+     * The facet is added in memory, the fingerprint is saved later by the {@link FingerprintJournal}.
      *
      * @param exws the workspace to register the fingerprint for
      * @throws IOException if fingerprint load operation fails
@@ -168,32 +275,26 @@ public class ExwsAllocateExecution extends AbstractSynchronousNonBlockingStepExe
         Fingerprint f = map.getOrCreate(run, exws.getDisplayName(), exws.getId());
 
         if (f.getFacet(WorkspaceBrowserFacet.class) == null) {
-            f.getFacets().add(new WorkspaceBrowserFacet(f, System.currentTimeMillis(), exws));
+            try (BulkChange bc = new BulkChange(f)) {
+                // not committed, adding the facet must not save the fingerprint
+                f.getFacets().add(new WorkspaceBrowserFacet(f, System.currentTimeMillis(), exws));
+            }
+            FingerprintJournal.markDirty(f);
         }
-
-        f.save();
     }
 
     /**
-     * Iterates through given disk pool list and finds the {@link DiskPool} that has the {@link DiskPool#diskPoolId}
-     * equal to the given disk pool id parameter.
+     * Finds the {@link DiskPool} that has the {@link DiskPool#diskPoolId} equal to the given disk pool id parameter.
      *
      * @param diskPoolId the matching id that the disk pool should have
-     * @param diskPools  the list of disk pools
+     * @param config     the disk pools defined in the Jenkins global config
      * @return the disk pool whose {@link DiskPool#diskPoolId} is equal to the given disk pool id parameter
      * @throws IOException if there isn't find any disk pool matching the disk pool id, or
      *                     if the disk pool doesn't have defined any {@link Disk} entries
      */
     @Nonnull
-    private static DiskPool findDiskPool(@Nonnull String diskPoolId, @Nonnull List<DiskPool> diskPools) throws IOException {
-        DiskPool diskPool = null;
-        for (DiskPool dp : diskPools) {
-            if (diskPoolId.equals(dp.getDiskPoolId())) {
-                diskPool = dp;
-                break;
-            }
-        }
-
+    private static DiskPool findDiskPool(@Nonnull String diskPoolId, @Nonnull DiskPoolsSnapshot config) throws IOException {
+        DiskPool diskPool = config.getDiskPool(diskPoolId);
         if (diskPool == null) {
             String message = format("No Disk Pool ID matching '%s' was found in the global config", diskPoolId);
             throw new AbortException(message);
@@ -20,6 +20,7 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -45,6 +46,8 @@ public final class ExwsAllocateStep extends AbstractStepImpl {
     @CheckForNull
     private DiskAllocationStrategy strategy;
 
+    private boolean clone;
+
     @DataBoundConstructor
     public ExwsAllocateStep(String diskPoolId) {
         this.diskPoolId = fixEmptyAndTrim(diskPoolId);
@@ -85,6 +88,15 @@ public final class ExwsAllocateStep extends AbstractStepImpl {
         this.strategy = strategy;
     }
 
+    public boolean isClone() {
+        return clone;
+    }
+
+    @DataBoundSetter
+    public void setClone(boolean clone) {
+        this.clone = clone;
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl) super.getDescriptor();
@@ -96,26 +108,44 @@ public final class ExwsAllocateStep extends AbstractStepImpl {
 
         private List<DiskPool> diskPools = Collections.emptyList();
 
+        private transient volatile DiskPoolsSnapshot snapshot;
+
         public DescriptorImpl() {
             super(ExwsAllocateExecution.class);
             load();
         }
 
+        @Override
+        public synchronized void load() {
+            super.load();
+            snapshot = new DiskPoolsSnapshot(diskPools);
+        }
+
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
-            diskPools = req.bindJSONToList(DiskPool.class, formData.get("diskPools"));
+            setDiskPools(req.bindJSONToList(DiskPool.class, formData.get("diskPools")));
             save();
             return super.configure(req, formData);
         }
 
         @Nonnull
         public List<DiskPool> getDiskPools() {
-            return Collections.unmodifiableList(diskPools);
+            return snapshot.getDiskPools();
         }
 
         @DataBoundSetter
-        public void setDiskPools(List<DiskPool> diskPools) {
-            this.diskPools = diskPools;
+        public synchronized void setDiskPools(List<DiskPool> diskPools) {
+            DiskPoolsSnapshot newSnapshot = new DiskPoolsSnapshot(diskPools);
+            this.diskPools = new ArrayList<>(newSnapshot.getDiskPools());
+            this.snapshot = newSnapshot;
+        }
+
+        /**
+         * @return the current version of the disk pools. Callers should read it once and use it for the whole step
+         */
+        @Nonnull
+        public DiskPoolsSnapshot getSnapshot() {
+            return snapshot;
         }
 
         @Restricted(NoExternalUse.class)
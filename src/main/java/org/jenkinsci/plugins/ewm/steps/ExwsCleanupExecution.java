@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.services.WorkspaceDeletionService;
+import org.jenkinsci.plugins.ewm.services.WorkspaceRegistry;
+import org.jenkinsci.plugins.ewm.services.WorkspaceTrash;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+
+import static java.lang.String.format;
+
+/**
+ * The execution of the {@link ExwsCleanupStep}.
+ */
+public class ExwsCleanupExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject(optional = true)
+    private transient ExwsCleanupStep step;
+
+    @StepContextParameter
+    private transient TaskListener listener;
+    @StepContextParameter
+    private transient Run<?, ?> run;
+
+    @Override
+    protected Void run() throws Exception {
+        ExternalWorkspace exws = step.getExternalWorkspace();
+        if (exws == null) {
+            throw new AbortException("No external workspace provided. Did you run the exwsAllocate step?");
+        }
+        checkAllocatedByRun(exws);
+
+        if (step.isTrash()) {
+            WorkspaceTrash.moveToTrash(exws);
+            listener.getLogger().println(format("Moved the workspace %s to the trash", exws.getCompleteWorkspacePath()));
+        } else {
+            WorkspaceDeletionService.delete(exws);
+            listener.getLogger().println(format("Scheduled the deletion of the workspace %s in the background", exws.getCompleteWorkspacePath()));
+        }
+        return null;
+    }
+
+    /**
+     * Only the build that allocated a workspace may delete it, e.g. a downstream build that uses the workspace
+     * of its upstream build through the {@code selectedRun} parameter may not.
+     *
+     * @param exws the workspace to delete
+     * @throws AbortException if the workspace wasn't allocated by the current build
+     */
+    private void checkAllocatedByRun(ExternalWorkspace exws) throws AbortException {
+        WorkspaceRegistry registry = WorkspaceRegistry.get();
+        // imports the workspace if it was allocated before the registry existed
+        registry.getWorkspace(exws.getId());
+        WorkspaceRegistry.Record record = registry.getRecord(exws.getId());
+        if (record == null || !record.getJobFullName().equals(run.getParent().getFullName())
+                || record.getBuildNumber() != run.getNumber()) {
+            throw new AbortException(format("The workspace %s wasn't allocated by this build, it won't be deleted. " +
+                    "Only the build that allocated a workspace can clean it up", exws.getCompleteWorkspacePath()));
+        }
+    }
+}
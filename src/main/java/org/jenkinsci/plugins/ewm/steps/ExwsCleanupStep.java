@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import hudson.Extension;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * The 'exwsCleanup' step.
+ * Schedules the deletion of an external workspace in the background, so that the build doesn't wait for it.
+ */
+public class ExwsCleanupStep extends AbstractStepImpl {
+
+    private final ExternalWorkspace externalWorkspace;
+
+    private boolean trash;
+
+    @DataBoundConstructor
+    public ExwsCleanupStep(ExternalWorkspace externalWorkspace) {
+        this.externalWorkspace = externalWorkspace;
+    }
+
+    @CheckForNull
+    public ExternalWorkspace getExternalWorkspace() {
+        return externalWorkspace;
+    }
+
+    public boolean isTrash() {
+        return trash;
+    }
+
+    @DataBoundSetter
+    public void setTrash(boolean trash) {
+        this.trash = trash;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(ExwsCleanupExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "exwsCleanup";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.steps_ExwsCleanupStep_DisplayName();
+        }
+    }
+}
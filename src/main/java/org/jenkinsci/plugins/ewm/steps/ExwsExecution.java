@@ -10,9 +10,7 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import hudson.slaves.NodeProperty;
-import hudson.slaves.NodePropertyDescriptor;
 import hudson.slaves.WorkspaceList;
-import hudson.util.DescribableList;
 import java.util.Hashtable;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.ewm.definitions.Template;
@@ -20,6 +18,9 @@ import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
 import org.jenkinsci.plugins.ewm.nodes.ExternalWorkspaceProperty;
 import org.jenkinsci.plugins.ewm.nodes.NodeDisk;
 import org.jenkinsci.plugins.ewm.nodes.NodeDiskPool;
+import org.jenkinsci.plugins.ewm.services.ActiveWorkspaceCounter;
+import org.jenkinsci.plugins.ewm.services.FingerprintJournal;
+import org.jenkinsci.plugins.ewm.services.WorkspaceSizeHistory;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.BodyExecution;
@@ -28,10 +29,8 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.jenkinsci.plugins.workflow.support.steps.FilePathDynamicContext;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.util.List;
 
 import static java.lang.String.format;
 
@@ -56,6 +55,12 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
     @StepContextParameter
     private transient FlowNode flowNode;
     private BodyExecution body;
+    @Nonnull
+    private String diskPoolId;
+    @Nonnull
+    private String diskId;
+    @Nonnull
+    private String workspaceId;
 
     @Override
     public boolean start() throws Exception {
@@ -73,10 +78,10 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
         NodeDiskPool nodeDiskPool;
 
         listener.getLogger().println("Searching for disk definitions in the External Workspace Templates from Jenkins global config");
-        Template template = findTemplate(node.getLabelString(), step.getDescriptor().getTemplates());
+        Template template = step.getDescriptor().getSnapshot().findTemplate(node);
 
         if (template != null) {
-            nodeDiskPool = findNodeDiskPool(diskPoolId, template.getNodeDiskPools());
+            nodeDiskPool = template.getNodeDiskPool(diskPoolId);
             if (nodeDiskPool == null) {
                 String message = format("No Disk Pool Ref ID matching '%s' was found in the External Workspace Template config labeled '%s'", diskPoolId, template.getLabel());
                 throw new AbortException(message);
@@ -86,14 +91,14 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
             listener.getLogger().println("Searching for disk definitions in the Node config");
             ExternalWorkspaceProperty exwsNodeProperty = findNodeProperty(node);
 
-            nodeDiskPool = findNodeDiskPool(diskPoolId, exwsNodeProperty.getNodeDiskPools());
+            nodeDiskPool = exwsNodeProperty.getNodeDiskPool(diskPoolId);
             if (nodeDiskPool == null) {
                 String message = format("No Disk Pool Ref ID matching '%s' was found in Node '%s' config", diskPoolId, node.getDisplayName());
                 throw new AbortException(message);
             }
         }
 
-        NodeDisk nodeDisk = findNodeDisk(exws.getDiskId(), nodeDiskPool.getNodeDisks(), node.getDisplayName());
+        NodeDisk nodeDisk = findNodeDisk(exws.getDiskId(), nodeDiskPool, node.getDisplayName());
         String nodeMountPoint = nodeDisk.getNodeMountPoint();
         VirtualChannel channel = node.getChannel();
 
@@ -103,25 +108,48 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
         FilePath diskFilePath = new FilePath(channel, nodeMountPoint);
         FilePath workspace = diskFilePath.child(exws.getPathOnDisk());
 
-        updateFingerprint(exws.getId());
-
-        listener.getLogger().println("Running in " + workspace);
-        body = getContext().newBodyInvoker()
-                .withContext(FilePathDynamicContext.createContextualObject(workspace, flowNode))
-                .withCallback(BodyExecutionCallback.wrap(getContext()))
-                .start();
+        this.diskPoolId = diskPoolId;
+        diskId = exws.getDiskId();
+        workspaceId = exws.getId();
+        if (!ActiveWorkspaceCounter.increment(diskPoolId, diskId, workspaceId)) {
+            throw new AbortException(format("The workspace %s is being deleted", exws.getCompleteWorkspacePath()));
+        }
+        try {
+            updateFingerprint(exws.getId());
+
+            listener.getLogger().println("Running in " + workspace);
+            body = getContext().newBodyInvoker()
+                    .withContext(FilePathDynamicContext.createContextualObject(workspace, flowNode))
+                    .withCallback(new ActiveWorkspaceCallback(diskPoolId, diskId, run.getParent().getFullName(), exws))
+                    .start();
+        } catch (IOException | RuntimeException e) {
+            // the callback won't ever be called
+            ActiveWorkspaceCounter.decrement(diskPoolId, diskId, workspaceId);
+            throw e;
+        }
         return false;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        // the live counter doesn't survive a restart, count again the bodies that are still running
+        ActiveWorkspaceCounter.increment(diskPoolId, diskId, workspaceId);
+    }
+
     /**
      * Adds the current run to the fingerprint's usages.
+     * The fingerprint is saved later by the {@link FingerprintJournal}.
      *
      * @param workspaceId the workspace's id
      * @throws IOException if fingerprint load operation fails,
      *                     or if no fingerprint is found for the given workspace id
      */
     private void updateFingerprint(String workspaceId) throws IOException {
-        Fingerprint f = Jenkins.get()._getFingerprint(workspaceId);
+        Fingerprint f = FingerprintJournal.get(workspaceId);
+        if (f == null) {
+            f = Jenkins.get()._getFingerprint(workspaceId);
+        }
         if (f == null) {
             throw new AbortException("Couldn't find any Fingerprint for: " + workspaceId);
         }
@@ -132,8 +160,8 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
         }
         Fingerprint.RangeSet set = usages.get(run.getParent().getFullName());
         if (set == null || !set.includes(run.getNumber())) {
-            f.addFor(run);
-            f.save();
+            f.addWithoutSaving(run.getParent().getFullName(), run.getNumber());
+            FingerprintJournal.markDirty(f);
         }
     }
 
@@ -144,27 +172,6 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
         }
     }
 
-    /**
-     * Finds a template from the given templates list that matches the given label String.
-     *
-     * @param nodeLabelString the label that the template has
-     * @param templates       a list of templates
-     * @return the template matching the given label, {@code null} otherwise
-     */
-    @CheckForNull
-    private static Template findTemplate(String nodeLabelString, List<Template> templates) {
-        Template selectedTemplate = null;
-        for (Template template : templates) {
-            String templateLabel = template.getLabel();
-            if (templateLabel != null && nodeLabelString.contains(templateLabel)) {
-                selectedTemplate = template;
-                break;
-            }
-        }
-
-        return selectedTemplate;
-    }
-
     /**
      * Finds the {@link NodeProperty} for the external workspace definition.
      *
@@ -174,16 +181,7 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
      */
     @Nonnull
     private static ExternalWorkspaceProperty findNodeProperty(Node node) throws IOException {
-        DescribableList<NodeProperty<?>, NodePropertyDescriptor> nodeProperties = node.getNodeProperties();
-
-        ExternalWorkspaceProperty exwsNodeProperty = null;
-        for (NodeProperty<?> nodeProperty : nodeProperties) {
-            if (nodeProperty instanceof ExternalWorkspaceProperty) {
-                exwsNodeProperty = (ExternalWorkspaceProperty) nodeProperty;
-                break;
-            }
-        }
-
+        ExternalWorkspaceProperty exwsNodeProperty = node.getNodeProperty(ExternalWorkspaceProperty.class);
         if (exwsNodeProperty == null) {
             String message = format("There is no External Workspace config defined in Node '%s' config", node.getDisplayName());
             throw new AbortException(message);
@@ -193,46 +191,18 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
     }
 
     /**
-     * Selects the {@link NodeDiskPool} that has the {@link NodeDiskPool#getDiskPoolRefId()} equal to the given
-     * {@code diskPoolRefId} param.
-     *
-     * @param diskPoolRefId the disk pool reference id to be searching for
-     * @param nodeDiskPools the list of disk pools
-     * @return the Disk Pool that has the matching reference id, {@code null} otherwise
-     */
-    @CheckForNull
-    private static NodeDiskPool findNodeDiskPool(@Nonnull String diskPoolRefId,
-                                                 @Nonnull List<NodeDiskPool> nodeDiskPools) {
-        NodeDiskPool selected = null;
-        for (NodeDiskPool nodeDiskPool : nodeDiskPools) {
-            if (diskPoolRefId.equals(nodeDiskPool.getDiskPoolRefId())) {
-                selected = nodeDiskPool;
-                break;
-            }
-        }
-
-        return selected;
-    }
-
-    /**
-     * Finds the disk definition from the given disks list that matches the given disk id.
+     * Finds the disk definition from the given node disk pool that matches the given disk id.
      *
-     * @param diskId    the disk id that the node definition should have
-     * @param nodeDisks the list of available disk definitions
-     * @param nodeName  the name of the current node
+     * @param diskId       the disk id that the node definition should have
+     * @param nodeDiskPool the node disk pool that has the available disk definitions
+     * @param nodeName     the name of the current node
      * @return the disk definition that matches the given disk id
      * @throws IOException if no disk definition was found,
      *                     or if the disk definition has its node mount point null
      */
     @Nonnull
-    private static NodeDisk findNodeDisk(String diskId, List<NodeDisk> nodeDisks, String nodeName) throws IOException {
-        NodeDisk selected = null;
-        for (NodeDisk nodeDisk : nodeDisks) {
-            if (diskId.equals(nodeDisk.getDiskRefId())) {
-                selected = nodeDisk;
-                break;
-            }
-        }
+    private static NodeDisk findNodeDisk(String diskId, NodeDiskPool nodeDiskPool, String nodeName) throws IOException {
+        NodeDisk selected = nodeDiskPool.getNodeDisk(diskId);
         if (selected == null) {
             String message = format("The Node '%s' config does not have defined any Disk Ref ID '%s'", nodeName, diskId);
             throw new AbortException(message);
@@ -245,6 +215,38 @@ public class ExwsExecution extends AbstractStepExecutionImpl {
         return selected;
     }
 
+    /**
+     * Decrements the {@link ActiveWorkspaceCounter} of the disk once the body has finished,
+     * records the workspace size in the {@link WorkspaceSizeHistory}, then completes the step.
+     */
+    private static final class ActiveWorkspaceCallback extends BodyExecutionCallback.TailCall {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nonnull
+        private final String diskPoolId;
+        @Nonnull
+        private final String diskId;
+        @Nonnull
+        private final String jobFullName;
+        @Nonnull
+        private final ExternalWorkspace exws;
+
+        ActiveWorkspaceCallback(@Nonnull String diskPoolId, @Nonnull String diskId, @Nonnull String jobFullName,
+                                @Nonnull ExternalWorkspace exws) {
+            this.diskPoolId = diskPoolId;
+            this.diskId = diskId;
+            this.jobFullName = jobFullName;
+            this.exws = exws;
+        }
+
+        @Override
+        protected void finished(StepContext context) {
+            ActiveWorkspaceCounter.decrement(diskPoolId, diskId, exws.getId());
+            WorkspaceSizeHistory.recordAsync(jobFullName, exws);
+        }
+    }
+
     @Deprecated
     private static final class Callback extends BodyExecutionCallback {
 
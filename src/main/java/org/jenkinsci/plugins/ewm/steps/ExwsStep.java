@@ -14,6 +14,7 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -48,25 +49,44 @@ public class ExwsStep extends AbstractStepImpl {
 
         private List<Template> templates = Collections.emptyList();
 
-        @DataBoundSetter
-        public void setTemplates(List<Template> templates) {
-            this.templates = templates;
-        }
+        private transient volatile TemplatesSnapshot snapshot;
+
         public DescriptorImpl() {
             super(ExwsExecution.class);
             load();
         }
 
+        @Override
+        public synchronized void load() {
+            super.load();
+            snapshot = new TemplatesSnapshot(templates);
+        }
+
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
-            templates = req.bindJSONToList(Template.class, formData.get("templates"));
+            setTemplates(req.bindJSONToList(Template.class, formData.get("templates")));
             save();
             return super.configure(req, formData);
         }
 
         @Nonnull
         public List<Template> getTemplates() {
-            return Collections.unmodifiableList(templates);
+            return snapshot.getTemplates();
+        }
+
+        @DataBoundSetter
+        public synchronized void setTemplates(List<Template> templates) {
+            TemplatesSnapshot newSnapshot = new TemplatesSnapshot(templates);
+            this.templates = new ArrayList<>(newSnapshot.getTemplates());
+            this.snapshot = newSnapshot;
+        }
+
+        /**
+         * @return the current version of the templates. Callers should read it once and use it for the whole step
+         */
+        @Nonnull
+        public TemplatesSnapshot getSnapshot() {
+            return snapshot;
         }
 
         @Override
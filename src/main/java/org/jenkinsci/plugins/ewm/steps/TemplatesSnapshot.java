@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ewm.definitions.Template;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable version of the {@link Template}s defined in the Jenkins global config.
+ * <p>
+ * A new snapshot is published by {@link ExwsStep.DescriptorImpl} each time the config changes.
+ * The template matching each set of node labels is memoized within the snapshot, so a config change starts
+ * from an empty memo. The memo is keyed by the labels rather than by the node, so it follows the dynamic labels,
+ * and it only keeps the {@link #MAX_INDEX_SIZE} most recently used entries.
+ */
+@Restricted(NoExternalUse.class)
+public final class TemplatesSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /**
+     * The maximum number of label sets whose matching template is memoized.
+     */
+    static final int MAX_INDEX_SIZE = SystemProperties.getInteger(TemplatesSnapshot.class.getName() + ".maxIndexSize", 1000);
+
+    // lowered by the tests
+    static int maxIndexSize = MAX_INDEX_SIZE;
+
+    private final long version;
+    private final List<Template> templates;
+
+    // the template matching each set of node labels, guarded by itself
+    private final Map<Set<LabelAtom>, Optional<Template>> templateIndex =
+            new LinkedHashMap<Set<LabelAtom>, Optional<Template>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Set<LabelAtom>, Optional<Template>> eldest) {
+                    return size() > maxIndexSize;
+                }
+            };
+
+    TemplatesSnapshot(@CheckForNull List<Template> templates) {
+        this.version = VERSIONS.incrementAndGet();
+        this.templates = templates == null
+                ? Collections.<Template>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(templates));
+    }
+
+    /**
+     * @return the version of this snapshot. A config change always publishes a higher version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Nonnull
+    public List<Template> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Finds the first template that {@link Template#matches(Node)} the given node.
+     * The result is memoized per set of node labels, including the dynamic ones.
+     *
+     * @param node the node
+     * @return the template matching the given node, {@code null} otherwise
+     */
+    @CheckForNull
+    public Template findTemplate(@Nonnull Node node) {
+        Set<LabelAtom> labels = new HashSet<>(node.getAssignedLabels());
+
+        Optional<Template> match;
+        synchronized (templateIndex) {
+            match = templateIndex.get(labels);
+        }
+        if (match == null) {
+            Template selected = null;
+            for (Template template : templates) {
+                if (template.matches(node)) {
+                    selected = template;
+                    break;
+                }
+            }
+            match = Optional.ofNullable(selected);
+            synchronized (templateIndex) {
+                templateIndex.put(labels, match);
+            }
+        }
+        return match.orElse(null);
+    }
+
+    int getIndexSize() {
+        synchronized (templateIndex) {
+            return templateIndex.size();
+        }
+    }
+}
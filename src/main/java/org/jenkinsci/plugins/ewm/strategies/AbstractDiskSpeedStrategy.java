@@ -8,6 +8,7 @@ import org.jenkinsci.plugins.ewm.definitions.Disk;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Base class that selects the {@link Disk} with the highest speed provided by the
@@ -23,8 +24,9 @@ public abstract class AbstractDiskSpeedStrategy extends DiskAllocationStrategy {
         long estimatedWorkspaceSize = getEstimatedWorkspaceSize();
         Disk candidate = null;
 
-        for (Disk disk : disks) {
-            long usableSpaceMegaBytes = retrieveUsableSpaceInMegaBytes(disk);
+        for (Map.Entry<Disk, Long> entry : probeAvailableSpaceInBytes(disks).entrySet()) {
+            Disk disk = entry.getKey();
+            long usableSpaceMegaBytes = bytesToMega(entry.getValue());
 
             if (candidate == null && usableSpaceMegaBytes >= estimatedWorkspaceSize) {
                 // found a possible candidate that has the usable space >= estimated workspace size
@@ -28,6 +28,11 @@ public class FastestReadSpeedStrategy extends AbstractDiskSpeedStrategy {
         super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
     }
 
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
     @Override
     protected int getDiskSpeed(@Nonnull DiskInfoProvider diskInfo) {
         return diskInfo.getReadSpeed();
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.actions.ExwsAllocateActionImpl;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.services.DiskProber;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * {@link DiskAllocationStrategy} implementation that allocates the same disk that was used by the job's
+ * last successful build, so that the build finds the page cache, the SCM mirrors and the build caches warm.
+ * <p>
+ * The previous disk is looked up in the {@link ExwsAllocateActionImpl} of the last successful build.
+ * If that build didn't allocate a workspace from the given disks, or if the disk doesn't have
+ * {@link #getEstimatedWorkspaceSize()} MB available anymore, the allocation is delegated to the
+ * {@link #getFallbackStrategy()}, which uses its own settings.
+ */
+@Extension
+public class JobAffinityStrategy extends DiskAllocationStrategy {
+
+    private DiskAllocationStrategy fallbackStrategy;
+
+    @DataBoundConstructor
+    public JobAffinityStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    /**
+     * @return the strategy used when the previous disk can't be reused, {@link MostUsableSpaceStrategy} by default
+     */
+    @Nonnull
+    public DiskAllocationStrategy getFallbackStrategy() {
+        return fallbackStrategy == null ? new MostUsableSpaceStrategy() : fallbackStrategy;
+    }
+
+    @DataBoundSetter
+    public void setFallbackStrategy(@CheckForNull DiskAllocationStrategy fallbackStrategy) {
+        this.fallbackStrategy = fallbackStrategy instanceof JobAffinityStrategy ? null : fallbackStrategy;
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        // without a build there is no history to look at
+        return getFallbackStrategy().allocateDisk(disks);
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks, @Nonnull Run<?, ?> run, @Nonnull TaskListener listener) throws IOException {
+        Run<?, ?> lastSuccessfulBuild = findLastSuccessfulBuild(run);
+        Disk previousDisk = lastSuccessfulBuild == null ? null : findPreviousDisk(disks, lastSuccessfulBuild);
+
+        if (previousDisk != null) {
+            if (isAvailable(previousDisk)) {
+                listener.getLogger().println(format("Reusing Disk ID '%s' from the last successful build %s",
+                        previousDisk.getDiskId(), lastSuccessfulBuild.getDisplayName()));
+                return previousDisk;
+            }
+            listener.getLogger().println(format("Disk ID '%s' used by the last successful build %s can't be reused, " +
+                            "it doesn't have at least %s MB usable space or it doesn't answer in time",
+                    previousDisk.getDiskId(), lastSuccessfulBuild.getDisplayName(), getEstimatedWorkspaceSize()));
+        }
+
+        DiskAllocationStrategy fallback = getFallbackStrategy();
+        listener.getLogger().println(format("Fallback to the Disk allocation strategy: '%s'", fallback.getDescriptor().getDisplayName()));
+        return fallback.allocateDisk(disks, run, listener);
+    }
+
+    @CheckForNull
+    private static Run<?, ?> findLastSuccessfulBuild(@Nonnull Run<?, ?> run) {
+        Job<?, ?> job = run.getParent();
+        return job == null ? null : job.getLastSuccessfulBuild();
+    }
+
+    /**
+     * Finds the disk, among the given ones, where the given build allocated its last workspace.
+     * Both the Disk ID and the master mount point must match, since the Disk IDs are only unique within a Disk Pool.
+     */
+    @CheckForNull
+    private static Disk findPreviousDisk(@Nonnull List<Disk> disks, @Nonnull Run<?, ?> build) {
+        ExwsAllocateActionImpl allocateAction = build.getAction(ExwsAllocateActionImpl.class);
+        if (allocateAction == null) {
+            return null;
+        }
+
+        List<ExternalWorkspace> allocatedWorkspaces = new ArrayList<>(allocateAction.getAllocatedWorkspaces());
+        ListIterator<ExternalWorkspace> iterator = allocatedWorkspaces.listIterator(allocatedWorkspaces.size());
+        while (iterator.hasPrevious()) {
+            ExternalWorkspace exws = iterator.previous();
+            for (Disk disk : disks) {
+                if (exws.getDiskId().equals(disk.getDiskId()) && exws.getMasterMountPoint().equals(disk.getMasterMountPoint())) {
+                    return disk;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isAvailable(@Nonnull Disk disk) throws IOException {
+        if (DiskProber.isDegraded(disk)) {
+            return false;
+        }
+        Map<Disk, Long> availableSpace = DiskProber.probe(Collections.singletonList(disk), this::retrieveAvailableSpaceInBytes,
+                this::isUsableSpaceInMemory);
+        Long bytes = availableSpace.get(disk);
+        return bytes != null && bytesToMega(bytes) >= getEstimatedWorkspaceSize();
+    }
+
+    @Symbol("jobAffinity")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        /**
+         * @return the descriptors that may be selected as fallback strategy, i.e. all of them but this one
+         */
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public List<DiskAllocationStrategyDescriptor> getFallbackStrategyDescriptors() {
+            List<DiskAllocationStrategyDescriptor> descriptors = new ArrayList<>(DiskAllocationStrategy.allDescriptors());
+            descriptors.remove(this);
+            return descriptors;
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_JobAffinity_DisplayName();
+        }
+    }
+}
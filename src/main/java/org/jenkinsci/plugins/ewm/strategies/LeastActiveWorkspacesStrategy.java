@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.Extension;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.ActiveWorkspaceCounter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DiskAllocationStrategy} implementation that allocates the disk with the fewest {@code exws} bodies
+ * currently running on it, as counted by the {@link ActiveWorkspaceCounter}.
+ * The usable space is only used to break ties.
+ */
+@Extension
+public class LeastActiveWorkspacesStrategy extends DiskAllocationStrategy {
+
+    @DataBoundConstructor
+    public LeastActiveWorkspacesStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        long estimatedWorkspaceSize = getEstimatedWorkspaceSize();
+        Disk candidate = null;
+        int candidateActiveWorkspaces = 0;
+        long candidateUsableSpace = 0;
+
+        for (Map.Entry<Disk, Long> entry : probeAvailableSpaceInBytes(disks).entrySet()) {
+            Disk disk = entry.getKey();
+            long usableSpace = entry.getValue();
+            if (bytesToMega(usableSpace) < estimatedWorkspaceSize) {
+                continue;
+            }
+
+            int activeWorkspaces = ActiveWorkspaceCounter.get(disk);
+            if (candidate == null || activeWorkspaces < candidateActiveWorkspaces
+                    || (activeWorkspaces == candidateActiveWorkspaces && usableSpace > candidateUsableSpace)) {
+                candidate = disk;
+                candidateActiveWorkspaces = activeWorkspaces;
+                candidateUsableSpace = usableSpace;
+            }
+        }
+
+        if (candidate == null) {
+            String message = String.format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize);
+            throw new AbortException(message);
+        }
+
+        return candidate;
+    }
+
+    @Symbol("leastActiveWorkspaces")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_LeastActiveWorkspaces_DisplayName();
+        }
+    }
+}
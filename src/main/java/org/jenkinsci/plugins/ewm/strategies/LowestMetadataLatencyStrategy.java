@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.Extension;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@link Disk} with the lowest {@link org.jenkinsci.plugins.ewm.DiskInfoProvider#getMetadataLatency()}.
+ * The disks whose metadata latency is unknown are only selected if none of the disks has it measured.
+ */
+@Extension
+public class LowestMetadataLatencyStrategy extends DiskAllocationStrategy {
+
+    @DataBoundConstructor
+    public LowestMetadataLatencyStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        long estimatedWorkspaceSize = getEstimatedWorkspaceSize();
+        Disk candidate = null;
+        double candidateLatency = 0;
+
+        for (Map.Entry<Disk, Long> entry : probeAvailableSpaceInBytes(disks).entrySet()) {
+            Disk disk = entry.getKey();
+            if (bytesToMega(entry.getValue()) < estimatedWorkspaceSize) {
+                continue;
+            }
+
+            double latency = disk.getDiskInfo().getMetadataLatency();
+            if (candidate == null || isLower(latency, candidateLatency)) {
+                candidate = disk;
+                candidateLatency = latency;
+            }
+        }
+
+        if (candidate == null) {
+            String message = String.format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize);
+            throw new AbortException(message);
+        }
+
+        return candidate;
+    }
+
+    private static boolean isLower(double latency, double candidateLatency) {
+        if (latency <= 0) {
+            // unknown latency never beats the candidate
+            return false;
+        }
+        return candidateLatency <= 0 || latency < candidateLatency;
+    }
+
+    @Symbol("lowestMetadataLatency")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_LowestMetadataLatency_DisplayName();
+        }
+    }
+}
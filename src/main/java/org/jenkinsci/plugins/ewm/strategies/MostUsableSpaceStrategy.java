@@ -14,9 +14,11 @@ import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@link DiskAllocationStrategy} implementation that allocates the disk with the most usable space.
+ * The space already reserved by the in-flight allocations is not taken into account as usable.
  *
  * @author Alexandru Somai
  */
@@ -32,24 +34,30 @@ public class MostUsableSpaceStrategy extends DiskAllocationStrategy {
         super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
     }
 
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
     @Nonnull
     @Override
     public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
-        Iterator<Disk> iterator = disks.iterator();
-        Disk selectedDisk = iterator.next();
-        long selectedDiskUsableSpaceBytes = retrieveUsableSpaceInBytes(selectedDisk);
+        Iterator<Map.Entry<Disk, Long>> iterator = probeAvailableSpaceInBytes(disks).entrySet().iterator();
+        Map.Entry<Disk, Long> selected = iterator.next();
+        Disk selectedDisk = selected.getKey();
+        long selectedDiskUsableSpaceBytes = selected.getValue();
 
         while (iterator.hasNext()) {
-            Disk disk = iterator.next();
-            long diskUsableSpaceBytes = retrieveUsableSpaceInBytes(disk);
+            Map.Entry<Disk, Long> entry = iterator.next();
+            long diskUsableSpaceBytes = entry.getValue();
 
             if (diskUsableSpaceBytes > selectedDiskUsableSpaceBytes) {
-                selectedDisk = disk;
+                selectedDisk = entry.getKey();
                 selectedDiskUsableSpaceBytes = diskUsableSpaceBytes;
             }
         }
 
-        if (retrieveUsableSpaceInMegaBytes(selectedDisk) < getEstimatedWorkspaceSize()) {
+        if (bytesToMega(selectedDiskUsableSpaceBytes) < getEstimatedWorkspaceSize()) {
             String message = String.format("The selected Disk with the most usable space doesn't have at least %s MB space", getEstimatedWorkspaceSize());
             throw new AbortException(message);
         }
@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.Extension;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.ActiveWorkspaceCounter;
+import org.jenkinsci.plugins.ewm.services.DiskProber;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link DiskAllocationStrategy} implementation that samples two random disks having at least the estimated
+ * workspace size, and allocates the better one of them.
+ * Only the sampled disks are probed, so the allocation cost doesn't grow with the Disk Pool size,
+ * and the load is spread across the pool instead of always hitting the same disk.
+ */
+@Extension
+public class PowerOfTwoChoicesStrategy extends DiskAllocationStrategy {
+
+    private static final int CHOICES = 2;
+
+    private boolean preferFewerActiveWorkspaces;
+
+    @DataBoundConstructor
+    public PowerOfTwoChoicesStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    public boolean isPreferFewerActiveWorkspaces() {
+        return preferFewerActiveWorkspaces;
+    }
+
+    @DataBoundSetter
+    public void setPreferFewerActiveWorkspaces(boolean preferFewerActiveWorkspaces) {
+        this.preferFewerActiveWorkspaces = preferFewerActiveWorkspaces;
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        List<Disk> shuffled = new ArrayList<>(disks);
+        Collections.shuffle(shuffled, ThreadLocalRandom.current());
+
+        List<Map.Entry<Disk, Long>> candidates = new ArrayList<>(CHOICES);
+        int index = 0;
+        while (candidates.size() < CHOICES && index < shuffled.size()) {
+            // sample only as many disks as there are choices left, the disks that don't fit are replaced on the next round
+            int end = Math.min(shuffled.size(), index + CHOICES - candidates.size());
+            Map<Disk, Long> sample = DiskProber.probe(shuffled.subList(index, end), this::retrieveAvailableSpaceInBytes,
+                    this::isUsableSpaceInMemory);
+            index = end;
+
+            for (Map.Entry<Disk, Long> entry : sample.entrySet()) {
+                if (bytesToMega(entry.getValue()) >= getEstimatedWorkspaceSize()) {
+                    candidates.add(entry);
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            String message = String.format("Couldn't find any Disk with at least %s MB usable space", getEstimatedWorkspaceSize());
+            throw new AbortException(message);
+        }
+
+        Map.Entry<Disk, Long> selected = candidates.get(0);
+        for (Map.Entry<Disk, Long> candidate : candidates.subList(1, candidates.size())) {
+            if (compare(candidate, selected) > 0) {
+                selected = candidate;
+            }
+        }
+        return selected.getKey();
+    }
+
+    /**
+     * Compares two candidates, based on their usable space and on their number of active workspaces.
+     * The criterion preferred by {@link #preferFewerActiveWorkspaces} is used first, and the other one breaks ties.
+     *
+     * @return a positive value if the first candidate is better than the second one
+     */
+    private int compare(Map.Entry<Disk, Long> first, Map.Entry<Disk, Long> second) {
+        int bySpace = Long.compare(first.getValue(), second.getValue());
+        int byActiveWorkspaces = Integer.compare(countActiveWorkspaces(second.getKey()), countActiveWorkspaces(first.getKey()));
+        if (preferFewerActiveWorkspaces) {
+            return byActiveWorkspaces != 0 ? byActiveWorkspaces : bySpace;
+        }
+        return bySpace != 0 ? bySpace : byActiveWorkspaces;
+    }
+
+    private static int countActiveWorkspaces(Disk disk) {
+        return ActiveWorkspaceCounter.get(disk);
+    }
+
+    @Symbol("powerOfTwoChoices")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_PowerOfTwoChoices_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.DiskProber;
+import org.jenkinsci.plugins.ewm.steps.DiskPoolsSnapshot;
+import org.jenkinsci.plugins.ewm.steps.ExwsAllocateStep;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DiskAllocationStrategy} implementation that rotates through the disks of a Disk Pool.
+ * <p>
+ * The cursor of each Disk Pool is an {@link AtomicInteger}, so concurrent allocations don't contend on a lock.
+ * The cursors are held by the {@link DiskPoolsSnapshot}, so they are dropped once the Jenkins global config changes.
+ * The cursor rotates through the disks that aren't degraded, so a degraded disk doesn't make the next one
+ * be selected twice in a row.
+ * Only the disk pointed by the cursor is probed, and the next ones only if it doesn't have the estimated workspace size.
+ */
+@Extension
+public class RoundRobinStrategy extends DiskAllocationStrategy {
+
+    /**
+     * The cursor of the disks that aren't part of the configured Disk Pools.
+     */
+    private static final AtomicInteger UNCONFIGURED_CURSOR = new AtomicInteger();
+
+    @DataBoundConstructor
+    public RoundRobinStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        List<Disk> healthy = new ArrayList<>(disks.size());
+        for (Disk disk : disks) {
+            if (!DiskProber.isDegraded(disk)) {
+                healthy.add(disk);
+            }
+        }
+        int start = cursorOf(disks).getAndIncrement();
+        long estimatedWorkspaceSize = getEstimatedWorkspaceSize();
+
+        for (int i = 0; i < healthy.size(); i++) {
+            Disk disk = healthy.get(Math.floorMod(start + i, healthy.size()));
+            if (estimatedWorkspaceSize <= 0) {
+                // nothing to check, no need to probe the disk
+                return disk;
+            }
+
+            Map<Disk, Long> probed = DiskProber.probe(Collections.singletonList(disk), this::retrieveAvailableSpaceInBytes,
+                    this::isUsableSpaceInMemory);
+            Long availableSpace = probed.get(disk);
+            if (availableSpace != null && bytesToMega(availableSpace) >= estimatedWorkspaceSize) {
+                return disk;
+            }
+        }
+
+        String message = String.format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize);
+        throw new AbortException(message);
+    }
+
+    @Nonnull
+    private static AtomicInteger cursorOf(@Nonnull List<Disk> disks) {
+        String diskPoolId = disks.isEmpty() ? null : disks.get(0).getDiskPoolId();
+        if (diskPoolId != null && Jenkins.getInstanceOrNull() != null) {
+            DiskPoolsSnapshot snapshot = ExtensionList.lookupSingleton(ExwsAllocateStep.DescriptorImpl.class).getSnapshot();
+            AtomicInteger cursor = snapshot.getCursor(diskPoolId);
+            if (cursor != null) {
+                return cursor;
+            }
+        }
+        return UNCONFIGURED_CURSOR;
+    }
+
+    @Symbol("roundRobin")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_RoundRobin_DisplayName();
+        }
+    }
+}
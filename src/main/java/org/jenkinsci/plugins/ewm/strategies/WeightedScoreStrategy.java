@@ -0,0 +1,260 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategy;
+import org.jenkinsci.plugins.ewm.DiskAllocationStrategyDescriptor;
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.jenkinsci.plugins.ewm.Messages;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.ActiveWorkspaceCounter;
+import org.jenkinsci.plugins.ewm.services.UsableSpaceSnapshot;
+import org.jenkinsci.plugins.ewm.utils.FormValidationUtil;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * {@link DiskAllocationStrategy} implementation that scores each disk by combining several factors,
+ * with weights set by the administrator:
+ * <ul>
+ * <li>the usable space</li>
+ * <li>the read speed and the write speed, provided by the {@link DiskInfoProvider}</li>
+ * <li>the number of {@code exws} bodies currently running on the disk, as counted by the {@link ActiveWorkspaceCounter}</li>
+ * <li>the recent latency of reading the disk's usable space, as measured by the {@link UsableSpaceSnapshot}</li>
+ * </ul>
+ * Each factor is normalized to [0, 1] across the candidate disks, so that the weights are comparable.
+ * The disk with the highest score is allocated, and the score breakdown of each disk is printed in the build log.
+ */
+@Extension
+public class WeightedScoreStrategy extends DiskAllocationStrategy {
+
+    private double usableSpaceWeight = 1;
+    private double readSpeedWeight = 1;
+    private double writeSpeedWeight = 1;
+    private double activeWorkspacesWeight = 1;
+    private double latencyWeight = 1;
+
+    @DataBoundConstructor
+    public WeightedScoreStrategy() {
+    }
+
+    @DataBoundSetter
+    public void setEstimatedWorkspaceSize(long estimatedWorkspaceSize) {
+        super.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+    }
+
+    @DataBoundSetter
+    public void setForceFreshUsableSpace(boolean forceFreshUsableSpace) {
+        super.setForceFreshUsableSpace(forceFreshUsableSpace);
+    }
+
+    public double getUsableSpaceWeight() {
+        return usableSpaceWeight;
+    }
+
+    @DataBoundSetter
+    public void setUsableSpaceWeight(double usableSpaceWeight) {
+        this.usableSpaceWeight = usableSpaceWeight;
+    }
+
+    public double getReadSpeedWeight() {
+        return readSpeedWeight;
+    }
+
+    @DataBoundSetter
+    public void setReadSpeedWeight(double readSpeedWeight) {
+        this.readSpeedWeight = readSpeedWeight;
+    }
+
+    public double getWriteSpeedWeight() {
+        return writeSpeedWeight;
+    }
+
+    @DataBoundSetter
+    public void setWriteSpeedWeight(double writeSpeedWeight) {
+        this.writeSpeedWeight = writeSpeedWeight;
+    }
+
+    public double getActiveWorkspacesWeight() {
+        return activeWorkspacesWeight;
+    }
+
+    @DataBoundSetter
+    public void setActiveWorkspacesWeight(double activeWorkspacesWeight) {
+        this.activeWorkspacesWeight = activeWorkspacesWeight;
+    }
+
+    public double getLatencyWeight() {
+        return latencyWeight;
+    }
+
+    @DataBoundSetter
+    public void setLatencyWeight(double latencyWeight) {
+        this.latencyWeight = latencyWeight;
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks) throws IOException {
+        return allocateDisk(disks, TaskListener.NULL);
+    }
+
+    @Nonnull
+    @Override
+    public Disk allocateDisk(@Nonnull List<Disk> disks, @Nonnull Run<?, ?> run, @Nonnull TaskListener listener) throws IOException {
+        return allocateDisk(disks, listener);
+    }
+
+    @Nonnull
+    private Disk allocateDisk(@Nonnull List<Disk> disks, @Nonnull TaskListener listener) throws IOException {
+        long estimatedWorkspaceSize = getEstimatedWorkspaceSize();
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<Disk, Long> entry : probeAvailableSpaceInBytes(disks).entrySet()) {
+            if (bytesToMega(entry.getValue()) >= estimatedWorkspaceSize) {
+                candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            String message = format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize);
+            throw new AbortException(message);
+        }
+
+        Range usableSpace = new Range();
+        Range readSpeed = new Range();
+        Range writeSpeed = new Range();
+        Range activeWorkspaces = new Range();
+        Range latency = new Range();
+        for (Candidate candidate : candidates) {
+            usableSpace.add(candidate.usableSpace);
+            readSpeed.add(candidate.readSpeed);
+            writeSpeed.add(candidate.writeSpeed);
+            activeWorkspaces.add(candidate.activeWorkspaces);
+            latency.add(candidate.latency);
+        }
+
+        PrintStream logger = listener.getLogger();
+        Candidate selected = null;
+        for (Candidate candidate : candidates) {
+            double usableSpaceScore = usableSpaceWeight * usableSpace.normalize(candidate.usableSpace);
+            double readSpeedScore = readSpeedWeight * readSpeed.normalize(candidate.readSpeed);
+            double writeSpeedScore = writeSpeedWeight * writeSpeed.normalize(candidate.writeSpeed);
+            // fewer active workspaces and lower latency are better
+            double activeWorkspacesScore = activeWorkspacesWeight * (1 - activeWorkspaces.normalize(candidate.activeWorkspaces));
+            double latencyScore = latencyWeight * (1 - latency.normalize(candidate.latency));
+            candidate.score = usableSpaceScore + readSpeedScore + writeSpeedScore + activeWorkspacesScore + latencyScore;
+
+            logger.println(format(Locale.ENGLISH, "Disk ID '%s' score: %.3f (usable space: %.3f, read speed: %.3f, write speed: %.3f, " +
+                            "active workspaces: %.3f, latency: %.3f)", candidate.disk.getDiskId(), candidate.score,
+                    usableSpaceScore, readSpeedScore, writeSpeedScore, activeWorkspacesScore, latencyScore));
+
+            if (selected == null || candidate.score > selected.score) {
+                selected = candidate;
+            }
+        }
+
+        return selected.disk;
+    }
+
+    private static final class Candidate {
+
+        private final Disk disk;
+        private final double usableSpace;
+        private final double readSpeed;
+        private final double writeSpeed;
+        private final double activeWorkspaces;
+        private final double latency;
+        private double score;
+
+        Candidate(Disk disk, long usableSpace) {
+            DiskInfoProvider diskInfo = disk.getDiskInfo();
+            String masterMountPoint = disk.getMasterMountPoint();
+
+            this.disk = disk;
+            this.usableSpace = usableSpace;
+            this.readSpeed = diskInfo.getReadSpeed();
+            this.writeSpeed = diskInfo.getWriteSpeed();
+            this.activeWorkspaces = ActiveWorkspaceCounter.get(disk);
+            this.latency = masterMountPoint == null ? 0 : UsableSpaceSnapshot.getLatency(masterMountPoint);
+        }
+    }
+
+    /**
+     * Min-max range of a factor across the candidate disks.
+     */
+    private static final class Range {
+
+        private double min = Double.MAX_VALUE;
+        private double max = -Double.MAX_VALUE;
+
+        void add(double value) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        /**
+         * @return the value scaled to [0, 1], or 0 if all the candidates have the same value
+         */
+        double normalize(double value) {
+            return max > min ? (value - min) / (max - min) : 0;
+        }
+    }
+
+    @Symbol("weightedScore")
+    @Extension
+    public static class DescriptorImpl extends DiskAllocationStrategyDescriptor {
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckUsableSpaceWeight(@QueryParameter String value) {
+            return FormValidationUtil.validateNonNegativeDouble(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckReadSpeedWeight(@QueryParameter String value) {
+            return FormValidationUtil.validateNonNegativeDouble(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckWriteSpeedWeight(@QueryParameter String value) {
+            return FormValidationUtil.validateNonNegativeDouble(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckActiveWorkspacesWeight(@QueryParameter String value) {
+            return FormValidationUtil.validateNonNegativeDouble(value);
+        }
+
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused")
+        public FormValidation doCheckLatencyWeight(@QueryParameter String value) {
+            return FormValidationUtil.validateNonNegativeDouble(value);
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return Messages.strategies_WeightedScore_DisplayName();
+        }
+    }
+}
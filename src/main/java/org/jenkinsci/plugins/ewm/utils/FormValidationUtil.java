@@ -83,4 +83,24 @@ public final class FormValidationUtil {
 
         return FormValidation.aggregate(formValidations);
     }
+
+    /**
+     * Validates the input String to be a double value, greater than or equal to zero.
+     *
+     * @param value the input String to be checked
+     * @return the FormValidation based on the input String
+     */
+    @Nonnull
+    public static FormValidation validateNonNegativeDouble(@Nonnull String value) {
+        double doubleValue;
+        try {
+            doubleValue = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return error(Messages.formValidation_NotADoubleValue());
+        }
+        if (doubleValue < 0 || Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+            return error(Messages.formValidation_NotPositiveDouble());
+        }
+        return FormValidation.ok();
+    }
 }
@@ -3,6 +3,8 @@ package org.jenkinsci.plugins.ewm.utils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Random;
 
 /**
@@ -15,6 +17,19 @@ public final class RandomUtil {
 
     private static final Random RANDOM = new Random();
 
+    /**
+     * The length of the time-ordered ids, in hex characters.
+     */
+    public static final int TIME_ORDERED_ID_LENGTH = 32;
+
+    private static final int TIMESTAMP_LENGTH = 12;
+    private static final long TIMESTAMP_MASK = (1L << 48) - 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // one generator with its own state per thread, seeded once, so the id generation doesn't contend on a lock.
+    // new SecureRandom() would be NativePRNG on Linux, whose instances all share one global generator and lock.
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(RandomUtil::newSecureRandom);
+
     private RandomUtil() {
         // do not instantiate
     }
@@ -33,4 +48,78 @@ public final class RandomUtil {
 
         return sb.toString().substring(0, numChars);
     }
+
+    /**
+     * Generates a 128-bit id, as 32 lower case hex characters.
+     * The first 48 bits are the current time in milliseconds, and the last 80 bits are secure random,
+     * so the ids sort in their creation order, up to the millisecond.
+     *
+     * @return the generated id
+     */
+    public static String generateTimeOrderedId() {
+        return generateTimeOrderedId(System.currentTimeMillis());
+    }
+
+    static String generateTimeOrderedId(long timestamp) {
+        byte[] tail = new byte[(TIME_ORDERED_ID_LENGTH - TIMESTAMP_LENGTH) / 2];
+        SECURE_RANDOM.get().nextBytes(tail);
+
+        char[] id = new char[TIME_ORDERED_ID_LENGTH];
+        writeTimestamp(id, timestamp);
+        for (int i = 0; i < tail.length; i++) {
+            id[TIMESTAMP_LENGTH + 2 * i] = HEX[(tail[i] >> 4) & 0xf];
+            id[TIMESTAMP_LENGTH + 2 * i + 1] = HEX[tail[i] & 0xf];
+        }
+        return new String(id);
+    }
+
+    /**
+     * Returns the smallest time-ordered id created at the given time, e.g. to range scan the ids by creation time.
+     *
+     * @param timestamp the creation time, in milliseconds since the epoch
+     * @return the smallest id created at the given time
+     */
+    public static String lowestTimeOrderedId(long timestamp) {
+        char[] id = new char[TIME_ORDERED_ID_LENGTH];
+        writeTimestamp(id, timestamp);
+        for (int i = TIMESTAMP_LENGTH; i < id.length; i++) {
+            id[i] = '0';
+        }
+        return new String(id);
+    }
+
+    /**
+     * Extracts the creation time of an id generated by {@link #generateTimeOrderedId()}.
+     * The ids generated by {@link #generateRandomHexString(int)} don't carry their creation time,
+     * a random timestamp is returned for them.
+     *
+     * @param id the time-ordered id
+     * @return the creation time, in milliseconds since the epoch
+     * @throws IllegalArgumentException if the id isn't a 32 characters hex string
+     */
+    public static long getTimestamp(String id) {
+        if (id.length() != TIME_ORDERED_ID_LENGTH) {
+            throw new IllegalArgumentException("Not a time-ordered id: " + id);
+        }
+        return Long.parseLong(id.substring(0, TIMESTAMP_LENGTH), 16);
+    }
+
+    static SecureRandom newSecureRandom() {
+        for (String algorithm : new String[]{"DRBG", "SHA1PRNG"}) {
+            try {
+                return SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                // try the next one
+            }
+        }
+        return new SecureRandom();
+    }
+
+    private static void writeTimestamp(char[] id, long timestamp) {
+        long value = timestamp & TIMESTAMP_MASK;
+        for (int i = TIMESTAMP_LENGTH - 1; i >= 0; i--) {
+            id[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
 }
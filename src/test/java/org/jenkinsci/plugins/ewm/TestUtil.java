@@ -2,7 +2,6 @@ package org.jenkinsci.plugins.ewm;
 
 import hudson.model.Node;
 import hudson.model.queue.QueueTaskFuture;
-import hudson.util.ReflectionUtils;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.RandomStringUtils;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
@@ -19,7 +18,6 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -54,10 +52,7 @@ public final class TestUtil {
 
     private static void setUpDiskPools(Jenkins jenkins, List<DiskPool> diskPools) {
         ExwsAllocateStep.DescriptorImpl descriptor = (ExwsAllocateStep.DescriptorImpl) jenkins.getDescriptor(ExwsAllocateStep.class);
-
-        Field diskPoolsField = ReflectionUtils.findField(ExwsAllocateStep.DescriptorImpl.class, "diskPools");
-        diskPoolsField.setAccessible(true);
-        ReflectionUtils.setField(diskPoolsField, descriptor, diskPools);
+        descriptor.setDiskPools(diskPools);
     }
 
     public static Disk findAllocatedDisk(Disk... disks) {
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.ewm.providers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link MeasuredDiskInfo}.
+ */
+public class MeasuredDiskInfoTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void unknownBeforeFirstProbe() {
+        MeasuredDiskInfo diskInfo = new MeasuredDiskInfo();
+
+        assertThat(diskInfo.getReadSpeed(), is(0));
+        assertThat(diskInfo.getWriteSpeed(), is(0));
+    }
+
+    @Test
+    public void probeMeasuresSpeedsAndCleansUp() throws Exception {
+        MeasuredDiskInfo diskInfo = new MeasuredDiskInfo();
+        diskInfo.setProbeSize(1);
+        File mountPoint = tmp.getRoot();
+
+        diskInfo.probe(mountPoint.getPath());
+
+        assertThat(diskInfo.getReadSpeed(), greaterThan(0));
+        assertThat(diskInfo.getWriteSpeed(), greaterThan(0));
+        assertThat(new File(mountPoint, AbstractProbingDiskInfo.PROBE_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void probeFailsIfProbeDirectoryCantBeCreated() throws Exception {
+        File mountPoint = tmp.newFile("not-a-directory");
+        MeasuredDiskInfo diskInfo = new MeasuredDiskInfo();
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Couldn't create the probe directory");
+        diskInfo.probe(mountPoint.getPath());
+    }
+
+    @Test
+    public void startProbeOncePerInterval() {
+        MeasuredDiskInfo diskInfo = new MeasuredDiskInfo();
+        diskInfo.setProbeInterval(60);
+
+        assertThat(diskInfo.startProbeIfDue(), is(true));
+        assertThat(diskInfo.startProbeIfDue(), is(false));
+    }
+
+    @Test
+    public void invalidSettingsFallbackToDefaults() {
+        MeasuredDiskInfo diskInfo = new MeasuredDiskInfo();
+        diskInfo.setProbeInterval(-1);
+        diskInfo.setProbeSize(0);
+
+        assertThat(diskInfo.getProbeInterval(), is(60L));
+        assertThat(diskInfo.getProbeSize(), is(64));
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.ewm.providers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link MetadataLatencyDiskInfo}.
+ */
+public class MetadataLatencyDiskInfoTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void unknownBeforeFirstProbe() {
+        MetadataLatencyDiskInfo diskInfo = new MetadataLatencyDiskInfo();
+
+        assertThat(diskInfo.getMetadataLatency(), is(0.0));
+        assertThat(diskInfo.getMedianMetadataLatency(), is(0.0));
+    }
+
+    @Test
+    public void probeMeasuresLatencyAndCleansUp() throws Exception {
+        MetadataLatencyDiskInfo diskInfo = new MetadataLatencyDiskInfo();
+        diskInfo.setProbeFiles(20);
+        File mountPoint = tmp.getRoot();
+
+        diskInfo.probe(mountPoint.getPath());
+
+        assertThat(diskInfo.getMetadataLatency(), greaterThan(0.0));
+        assertThat(diskInfo.getMetadataLatency(), greaterThanOrEqualTo(diskInfo.getMedianMetadataLatency()));
+        assertThat(new File(mountPoint, AbstractProbingDiskInfo.PROBE_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void nearestRankPercentile() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        assertThat(MetadataLatencyDiskInfo.percentile(sorted, 50), is(5L));
+        assertThat(MetadataLatencyDiskInfo.percentile(sorted, 95), is(10L));
+        assertThat(MetadataLatencyDiskInfo.percentile(sorted, 0), is(1L));
+    }
+}
@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ActiveWorkspaceCounter}.
+ */
+public class ActiveWorkspaceCounterTest {
+
+    @Test
+    public void sameDiskIdInDifferentDiskPools() {
+        Disk disk1 = new Disk("counter-disk", null, "counter-mount-1", null, null);
+        Disk disk2 = new Disk("counter-disk", null, "counter-mount-2", null, null);
+        new DiskPool("counter-pool-1", null, null, null, null, null, Collections.singletonList(disk1));
+        new DiskPool("counter-pool-2", null, null, null, null, null, Collections.singletonList(disk2));
+
+        ActiveWorkspaceCounter.increment("counter-pool-1", "counter-disk");
+        try {
+            assertThat(ActiveWorkspaceCounter.get(disk1), is(1));
+            assertThat(ActiveWorkspaceCounter.get(disk2), is(0));
+        } finally {
+            ActiveWorkspaceCounter.decrement("counter-pool-1", "counter-disk");
+        }
+        assertThat(ActiveWorkspaceCounter.get(disk1), is(0));
+    }
+
+    @Test
+    public void neverBelowZero() {
+        ActiveWorkspaceCounter.decrement("counter-pool", "counter-disk");
+        ActiveWorkspaceCounter.increment("counter-pool", "counter-disk");
+        ActiveWorkspaceCounter.decrement("counter-pool", "counter-disk");
+        ActiveWorkspaceCounter.decrement("counter-pool", "counter-disk");
+
+        assertThat(ActiveWorkspaceCounter.get("counter-pool", "counter-disk"), is(0));
+    }
+
+    @Test
+    public void workspaceInUseIsNotMarkedDeleted() {
+        assertThat(ActiveWorkspaceCounter.increment("counter-pool", "counter-disk", "counter-workspace"), is(true));
+        try {
+            assertThat(ActiveWorkspaceCounter.markDeleted("counter-workspace"), is(1));
+            assertThat(ActiveWorkspaceCounter.isMarkedDeleted("counter-workspace"), is(false));
+        } finally {
+            ActiveWorkspaceCounter.decrement("counter-pool", "counter-disk", "counter-workspace");
+        }
+
+        assertThat(ActiveWorkspaceCounter.markDeleted("counter-workspace"), is(0));
+        assertThat(ActiveWorkspaceCounter.increment("counter-pool", "counter-disk", "counter-workspace"), is(false));
+        assertThat(ActiveWorkspaceCounter.getByWorkspace("counter-workspace"), is(0));
+
+        ActiveWorkspaceCounter.unmarkDeleted("counter-workspace");
+        assertThat(ActiveWorkspaceCounter.isMarkedDeleted("counter-workspace"), is(false));
+    }
+}
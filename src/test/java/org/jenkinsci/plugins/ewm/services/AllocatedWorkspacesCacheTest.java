@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.model.Run;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link AllocatedWorkspacesCache}.
+ */
+public class AllocatedWorkspacesCacheTest {
+
+    @After
+    public void tearDown() {
+        AllocatedWorkspacesCache.clear();
+    }
+
+    @Test
+    public void putAndGet() {
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", "mounting-point", "path");
+        AllocatedWorkspacesCache.put(mockRun("folder/job#1"), Collections.singletonList(exws));
+
+        AllocatedWorkspacesCache.Entry entry = AllocatedWorkspacesCache.get("folder/job#1");
+        assertThat(entry, is(notNullValue()));
+        assertThat(entry.getWorkspaces(), contains(exws));
+        assertThat(entry.getRunDisplayName(), is("folder/job #1"));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        for (int i = 0; i <= AllocatedWorkspacesCache.MAX_SIZE; i++) {
+            AllocatedWorkspacesCache.put(mockRun("job#" + i), Collections.<ExternalWorkspace>emptyList());
+            // keep the first entry recently used
+            AllocatedWorkspacesCache.get("job#0");
+        }
+
+        assertThat(AllocatedWorkspacesCache.size(), is(AllocatedWorkspacesCache.MAX_SIZE));
+        assertThat(AllocatedWorkspacesCache.get("job#0"), is(notNullValue()));
+        assertThat(AllocatedWorkspacesCache.get("job#1"), is(nullValue()));
+    }
+
+    @Test
+    public void invalidateJobAndFolder() {
+        AllocatedWorkspacesCache.put(mockRun("folder/job#1"), Collections.<ExternalWorkspace>emptyList());
+        AllocatedWorkspacesCache.put(mockRun("folder/job2#1"), Collections.<ExternalWorkspace>emptyList());
+        AllocatedWorkspacesCache.put(mockRun("other#1"), Collections.<ExternalWorkspace>emptyList());
+
+        AllocatedWorkspacesCache.invalidateJob("folder/job");
+        assertThat(AllocatedWorkspacesCache.get("folder/job#1"), is(nullValue()));
+        assertThat(AllocatedWorkspacesCache.get("folder/job2#1"), is(notNullValue()));
+
+        AllocatedWorkspacesCache.invalidateJob("folder");
+        assertThat(AllocatedWorkspacesCache.get("folder/job2#1"), is(nullValue()));
+        assertThat(AllocatedWorkspacesCache.get("other#1"), is(notNullValue()));
+    }
+
+    private static Run<?, ?> mockRun(String id) {
+        Run<?, ?> run = mock(Run.class);
+        doReturn(id).when(run).getExternalizableId();
+        doReturn(id.replace("#", " #")).when(run).toString();
+        return run;
+    }
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.providers.AbstractProbingDiskInfo;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DiskProbeWork}.
+ */
+public class DiskProbeWorkTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        waitForNoProbeInFlight();
+    }
+
+    @Test
+    public void skipDiskWhoseProbeIsInFlight() throws Exception {
+        BlockingDiskInfo diskInfo = new BlockingDiskInfo(release);
+        Disk disk = new Disk("disk", null, tmp.newFolder("in-flight").getPath(), null, diskInfo);
+
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(disk), 2, TimeUnit.MINUTES.toMillis(1)), is(1));
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(disk), 2, TimeUnit.MINUTES.toMillis(1)), is(0));
+
+        release.countDown();
+        waitForNoProbeInFlight();
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(disk), 2, TimeUnit.MINUTES.toMillis(1)), is(1));
+        assertThat(diskInfo.probes.get() >= 1, is(true));
+    }
+
+    @Test
+    public void timedOutProbeIsInterruptedAndDoesNotHoldTheConcurrency() throws Exception {
+        BlockingDiskInfo hungInfo = new BlockingDiskInfo(release);
+        Disk hung = new Disk("hung", null, tmp.newFolder("hung").getPath(), null, hungInfo);
+        BlockingDiskInfo otherInfo = new BlockingDiskInfo(new CountDownLatch(0));
+        Disk other = new Disk("other", null, tmp.newFolder("other").getPath(), null, otherInfo);
+
+        assertThat(DiskProbeWork.schedule(Arrays.asList(hung, other), 1, TimeUnit.MINUTES.toMillis(1)), is(1));
+        // the concurrency is taken by the running probe
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(other), 1, TimeUnit.MINUTES.toMillis(1)), is(0));
+
+        Thread.sleep(10);
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(other), 1, 1), is(1));
+        assertThat(hungInfo.interrupted.await(1, TimeUnit.MINUTES), is(true));
+    }
+
+    @Test
+    public void failedProbeIsNotInFlight() throws Exception {
+        AbstractProbingDiskInfo failing = new AbstractProbingDiskInfo() {
+            @Override
+            protected void probe(@Nonnull File directory) throws IOException {
+                throw new IOException("failure");
+            }
+        };
+        Disk disk = new Disk("failing", null, tmp.newFolder("failing").getPath(), null, failing);
+
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(disk), 1, TimeUnit.MINUTES.toMillis(1)), is(1));
+        waitForNoProbeInFlight();
+        // the next probe is only due after the interval
+        assertThat(DiskProbeWork.schedule(Collections.singletonList(disk), 1, TimeUnit.MINUTES.toMillis(1)), is(0));
+    }
+
+    private static void waitForNoProbeInFlight() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (DiskProbeWork.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Probe that waits for the given latch, and is always due.
+     */
+    private static final class BlockingDiskInfo extends AbstractProbingDiskInfo {
+
+        private final CountDownLatch latch;
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private final AtomicInteger probes = new AtomicInteger();
+
+        BlockingDiskInfo(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public boolean startProbeIfDue() {
+            return true;
+        }
+
+        @Override
+        protected void probe(@Nonnull File directory) {
+            probes.incrementAndGet();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }
+    }
+}
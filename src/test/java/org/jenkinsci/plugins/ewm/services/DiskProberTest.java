@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DiskProber}.
+ */
+public class DiskProberTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void keepOrderOfDisks() throws Exception {
+        Disk disk1 = new Disk("disk1", null, "prober-order-1", null, null);
+        Disk disk2 = new Disk("disk2", null, "prober-order-2", null, null);
+
+        Map<Disk, String> results = DiskProber.probe(Arrays.asList(disk1, disk2), Disk::getDiskId);
+
+        assertThat(results.keySet(), contains(disk1, disk2));
+        assertThat(results.get(disk2), is("disk2"));
+    }
+
+    @Test
+    public void skipAndDegradeHungDisk() throws Exception {
+        Disk healthy = new Disk("healthy", null, "prober-healthy", null, null);
+        Disk hung = new Disk("hung", null, "prober-hung", null, null);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            Map<Disk, String> results = DiskProber.probe(Arrays.asList(hung, healthy), disk -> {
+                if (disk == hung) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return disk.getDiskId();
+            });
+
+            assertThat(results.keySet(), contains(healthy));
+            assertThat(DiskProber.isDegraded(hung), is(true));
+            assertThat(DiskProber.isDegraded(healthy), is(false));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void queuedDiskIsNotDegraded() throws Exception {
+        List<Disk> disks = new ArrayList<>();
+        for (int i = 0; i < DiskProber.THREADS; i++) {
+            disks.add(new Disk("busy" + i, null, "prober-busy-" + i, null, null));
+        }
+        Disk queued = new Disk("queued", null, "prober-queued", null, null);
+        disks.add(queued);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            Map<Disk, String> results = DiskProber.probe(disks, disk -> {
+                if (disk != queued) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return disk.getDiskId();
+            });
+
+            assertThat(results.isEmpty(), is(true));
+            // it never started, all the probing threads were held by the other disks
+            assertThat(DiskProber.isDegraded(queued), is(false));
+            assertThat(DiskProber.isDegraded(disks.get(0)), is(true));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void inlineProbesRunOnCallingThread() throws Exception {
+        Disk inline = new Disk("inline", null, "prober-inline", null, null);
+        Disk pooled = new Disk("pooled", null, "prober-pooled", null, null);
+        Thread caller = Thread.currentThread();
+
+        Map<Disk, Boolean> results = DiskProber.probe(Arrays.asList(pooled, inline),
+                disk -> Thread.currentThread() == caller, disk -> disk == inline);
+
+        assertThat(results.keySet(), contains(pooled, inline));
+        assertThat(results.get(inline), is(true));
+        assertThat(results.get(pooled), is(false));
+    }
+
+    @Test
+    public void propagateProbeFailure() throws Exception {
+        Disk disk = new Disk("failing", null, "prober-failing", null, null);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage("probe failed");
+        DiskProber.probe(Arrays.asList(disk), d -> {
+            throw new AbortException("probe failed");
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.model.Fingerprint;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FingerprintJournal}.
+ */
+public class FingerprintJournalTest {
+
+    @After
+    public void tearDown() {
+        FingerprintJournal.clear();
+    }
+
+    @Test
+    public void coalesceUpdatesOfTheSameFingerprint() throws Exception {
+        Fingerprint fingerprint = mockFingerprint("0123456789abcdef0123456789abcdef");
+
+        FingerprintJournal.markDirty(fingerprint);
+        FingerprintJournal.markDirty(fingerprint);
+        assertThat(FingerprintJournal.getPendingCount(), is(1));
+        assertThat(FingerprintJournal.get("0123456789abcdef0123456789abcdef"), is(fingerprint));
+
+        FingerprintJournal.flush();
+
+        verify(fingerprint, times(1)).save();
+        assertThat(FingerprintJournal.getPendingCount(), is(0));
+        assertThat(FingerprintJournal.get("0123456789abcdef0123456789abcdef"), nullValue());
+    }
+
+    @Test
+    public void flushSavesEachDirtyFingerprint() throws Exception {
+        Fingerprint fingerprint1 = mockFingerprint("0123456789abcdef0123456789abcdef");
+        Fingerprint fingerprint2 = mockFingerprint("fedcba9876543210fedcba9876543210");
+
+        FingerprintJournal.markDirty(fingerprint1);
+        FingerprintJournal.markDirty(fingerprint2);
+        FingerprintJournal.flush();
+
+        verify(fingerprint1).save();
+        verify(fingerprint2).save();
+    }
+
+    @Test
+    public void retryFailedSave() throws Exception {
+        Fingerprint fingerprint = mockFingerprint("0123456789abcdef0123456789abcdef");
+        doThrow(new IOException("disk full")).doNothing().when(fingerprint).save();
+
+        FingerprintJournal.markDirty(fingerprint);
+        FingerprintJournal.flush();
+        assertThat(FingerprintJournal.getPendingCount(), is(1));
+
+        FingerprintJournal.flush();
+        assertThat(FingerprintJournal.getPendingCount(), is(0));
+        verify(fingerprint, times(2)).save();
+    }
+
+    private static Fingerprint mockFingerprint(String id) {
+        Fingerprint fingerprint = mock(Fingerprint.class);
+        when(fingerprint.getHashString()).thenReturn(id);
+        return fingerprint;
+    }
+}
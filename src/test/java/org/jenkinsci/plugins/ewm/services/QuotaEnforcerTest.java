@@ -0,0 +1,182 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.definitions.Quota;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link QuotaEnforcer}.
+ */
+public class QuotaEnforcerTest {
+
+    private static final int KILOBYTE = 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @After
+    public void tearDown() {
+        WorkspaceSizeCalculator.clear();
+        WorkspaceSizeHistory.clear();
+        for (String owner : Arrays.asList("team-a/job#1", "team-a/job#2", "team-b/job#1")) {
+            SpaceReservationLedger.release(owner);
+        }
+        for (int i = 0; i < 8; i++) {
+            SpaceReservationLedger.release("job#" + i);
+        }
+    }
+
+    @Test
+    public void quotaAppliesToJobAndFolder() {
+        assertThat(new Quota("team-a", 1).appliesTo("team-a/job"), is(true));
+        assertThat(new Quota("team-a", 1).appliesTo("team-a"), is(true));
+        assertThat(new Quota("team-a", 1).appliesTo("team-ab/job"), is(false));
+        assertThat(new Quota(null, 1).appliesTo("any/job"), is(true));
+    }
+
+    @Test
+    public void usedSpaceCountsTheWorkspacesInScope() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        register(registry, "team-a/job", 1, 600);
+        register(registry, "team-a/other", 1, 300);
+        register(registry, "team-b/job", 1, 700);
+
+        assertThat(QuotaEnforcer.getUsedBytes(registry, diskPool(), new Quota("team-a", 1)), is(900L * KILOBYTE));
+        assertThat(QuotaEnforcer.getUsedBytes(registry, diskPool(), new Quota("team-a/job", 1)), is(600L * KILOBYTE));
+        assertThat(QuotaEnforcer.getUsedBytes(registry, diskPool(), new Quota(null, 1)), is(1600L * KILOBYTE));
+    }
+
+    @Test
+    public void allowAllocationWithinQuota() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        register(registry, "team-a/job", 1, 600);
+        register(registry, "team-b/job", 1, 600);
+
+        QuotaEnforcer.check(registry, diskPool(new Quota("team-a", 1)), "team-a/job", 0);
+    }
+
+    @Test
+    public void rejectAllocationOverQuota() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        register(registry, "team-a/job", 1, 600);
+        register(registry, "team-a/job", 2, 600);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage("The Disk Pool 'pool' quota of 1 MB for 'team-a' would be exceeded");
+        QuotaEnforcer.check(registry, diskPool(new Quota("team-b", 10), new Quota("team-a", 1)), "team-a/job", 0);
+    }
+
+    @Test
+    public void rejectAllocationWhoseEstimatedSizeExceedsQuota() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+
+        thrown.expect(AbortException.class);
+        QuotaEnforcer.check(registry, diskPool(new Quota(null, 10)), "job", 11);
+    }
+
+    @Test
+    public void unmeasuredWorkspacesAreAccountedWithTheMeanSize() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        ExternalWorkspace exws = registerUnmeasured(registry, "team-a/job", 1, 600);
+        registerUnmeasured(registry, "team-b/job", 1, 600);
+        WorkspaceSizeHistory.record("team-a/job", "pool", 300L * KILOBYTE);
+        DiskPool diskPool = diskPool(new Quota("team-a", 1));
+
+        QuotaEnforcer.check(registry, diskPool, "team-a/job", 0);
+
+        // not walked on the allocation path
+        assertThat(WorkspaceSizeCalculator.getSize(exws.getId()), is(nullValue()));
+        assertThat(QuotaEnforcer.getUsedBytes(registry, diskPool, new Quota(null, 1)), is(300L * KILOBYTE));
+    }
+
+    @Test
+    public void usedSpaceCountsTheReservationsInProgress() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        register(registry, "team-a/job", 1, 600);
+        SpaceReservationLedger.reserve("pool", "disk", "team-a/job#1", 1000L * KILOBYTE);
+        SpaceReservationLedger.reserve("pool", "disk", "team-a/job#2", 300L * KILOBYTE);
+        SpaceReservationLedger.reserve("pool", "disk", "team-b/job#1", 700L * KILOBYTE);
+
+        // the larger of the measured and of the reserved space of each build
+        assertThat(QuotaEnforcer.getUsedBytes(registry, diskPool(), new Quota("team-a", 1)), is(1300L * KILOBYTE));
+    }
+
+    @Test
+    public void concurrentAllocationsDontExceedTheQuotaTogether() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        Disk disk = new Disk("disk", null, tmp.getRoot().getPath(), null, null);
+        DiskPool diskPool = new DiskPool("pool", null, null, null, null, null, Collections.singletonList(disk));
+        diskPool.setQuotas(Collections.singletonList(new Quota(null, 2)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> allocations = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String owner = "job#" + i;
+                allocations.add(executor.submit(() -> {
+                    try {
+                        QuotaEnforcer.checkAndReserve(registry, diskPool, Collections.singletonList(disk), "job", 1, owner,
+                                candidates -> disk);
+                        return true;
+                    } catch (AbortException e) {
+                        return false;
+                    }
+                }));
+            }
+            int admitted = 0;
+            for (Future<Boolean> allocation : allocations) {
+                if (allocation.get(1, TimeUnit.MINUTES)) {
+                    admitted++;
+                }
+            }
+            assertThat(admitted, is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void register(WorkspaceRegistry registry, String jobFullName, int buildNumber, int kiloBytes) throws Exception {
+        WorkspaceSizeCalculator.measure(registerUnmeasured(registry, jobFullName, buildNumber, kiloBytes));
+    }
+
+    private ExternalWorkspace registerUnmeasured(WorkspaceRegistry registry, String jobFullName, int buildNumber, int kiloBytes) throws Exception {
+        File mountPoint = tmp.newFolder();
+        File workspace = new File(mountPoint, "ws");
+        workspace.mkdirs();
+        Files.write(new File(workspace, "file").toPath(), new byte[kiloBytes * KILOBYTE]);
+
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "ws");
+        registry.register(exws, jobFullName, buildNumber, System.currentTimeMillis());
+        return exws;
+    }
+
+    private static DiskPool diskPool(Quota... quotas) {
+        DiskPool diskPool = new DiskPool("pool", null, null, null, null, null, Collections.emptyList());
+        diskPool.setQuotas(Arrays.asList(quotas));
+        return diskPool;
+    }
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.model.Run;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link RunSaveDebouncer}.
+ */
+public class RunSaveDebouncerTest {
+
+    @After
+    public void tearDown() {
+        RunSaveDebouncer.clear();
+    }
+
+    @Test
+    public void coalesceChangesOfTheSameRun() throws Exception {
+        Run<?, ?> run = mockRun("job#1");
+
+        RunSaveDebouncer.markDirty(run);
+        RunSaveDebouncer.markDirty(run);
+        assertThat(RunSaveDebouncer.getPendingCount(), is(1));
+
+        RunSaveDebouncer.flush(run);
+        RunSaveDebouncer.flush(run);
+
+        verify(run, times(1)).save();
+        assertThat(RunSaveDebouncer.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void flushWithoutPendingSave() throws Exception {
+        Run<?, ?> run = mockRun("job#1");
+
+        RunSaveDebouncer.flush(run);
+
+        verify(run, never()).save();
+    }
+
+    @Test
+    public void failedFlushStaysPending() throws Exception {
+        Run<?, ?> run = mockRun("job#1");
+        doThrow(new IOException("disk full")).doNothing().when(run).save();
+
+        RunSaveDebouncer.markDirty(run);
+        try {
+            RunSaveDebouncer.flush(run);
+            fail("The save failure should be propagated");
+        } catch (IOException e) {
+            assertThat(RunSaveDebouncer.getPendingCount(), is(1));
+        }
+
+        RunSaveDebouncer.flush(run);
+        assertThat(RunSaveDebouncer.getPendingCount(), is(0));
+        verify(run, times(2)).save();
+    }
+
+    @Test
+    public void timerSavesPendingRun() throws Exception {
+        Run<?, ?> run = mockRun("job#2");
+
+        RunSaveDebouncer.markDirty(run);
+
+        verify(run, timeout(RunSaveDebouncer.DELAY * 10).times(1)).save();
+        assertThat(RunSaveDebouncer.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void failingSaveIsGivenUp() throws Exception {
+        Run<?, ?> run = mockRun("job#3");
+        doThrow(new IOException("disk full")).when(run).save();
+
+        RunSaveDebouncer.markDirty(run);
+        for (int i = 0; i < RunSaveDebouncer.MAX_RETRIES; i++) {
+            RunSaveDebouncer.save("job#3");
+            assertThat(RunSaveDebouncer.getPendingCount(), is(1));
+        }
+        RunSaveDebouncer.save("job#3");
+
+        assertThat(RunSaveDebouncer.getPendingCount(), is(0));
+        verify(run, times(RunSaveDebouncer.MAX_RETRIES + 1)).save();
+    }
+
+    @Test
+    public void deletedRunIsNotSaved() throws Exception {
+        Run<?, ?> run = mockRun("job#4");
+
+        RunSaveDebouncer.markDirty(run);
+        new RunSaveDebouncer.RunListenerImpl().onDeleted(run);
+        assertThat(RunSaveDebouncer.getPendingCount(), is(0));
+
+        Thread.sleep(RunSaveDebouncer.DELAY * 2);
+        verify(run, never()).save();
+    }
+
+    private static Run<?, ?> mockRun(String id) {
+        Run<?, ?> run = mock(Run.class);
+        doReturn(id).when(run).getExternalizableId();
+        return run;
+    }
+}
@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link SpaceReservationLedger}.
+ */
+public class SpaceReservationLedgerTest {
+
+    private static final String POOL_ID = "ledger-pool";
+    private static final String DISK_ID = "ledger-disk";
+    private static final String OWNER_ONE = "job#1";
+    private static final String OWNER_TWO = "job#2";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @After
+    public void tearDown() {
+        SpaceReservationLedger.release(OWNER_ONE);
+        SpaceReservationLedger.release(OWNER_TWO);
+        UsableSpaceSnapshot.clear();
+    }
+
+    @Test
+    public void sumReservationsOfDisk() {
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_ONE, 100L);
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_ONE, 50L);
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_TWO, 10L);
+        SpaceReservationLedger.reserve(POOL_ID, "other-disk", OWNER_TWO, 1000L);
+
+        assertThat(SpaceReservationLedger.getReservedBytes(POOL_ID, DISK_ID), is(160L));
+        assertThat(SpaceReservationLedger.getReservationCount(POOL_ID, DISK_ID), is(3));
+    }
+
+    @Test
+    public void reservationsAreKeptPerDiskPool() {
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_ONE, 100L);
+
+        assertThat(SpaceReservationLedger.getReservedBytes("other-pool", DISK_ID), is(0L));
+        assertThat(SpaceReservationLedger.getReservedBytesByOwner("other-pool", DISK_ID).isEmpty(), is(true));
+    }
+
+    @Test
+    public void releaseReservationsOfOwner() {
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_ONE, 100L);
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_TWO, 10L);
+
+        SpaceReservationLedger.release(OWNER_ONE);
+
+        assertThat(SpaceReservationLedger.getReservedBytes(POOL_ID, DISK_ID), is(10L));
+    }
+
+    @Test
+    public void releasedEntriesAreRemoved() throws Exception {
+        int entries = SpaceReservationLedger.getEntryCount();
+        Disk disk = new Disk(DISK_ID, null, "ledger-mount-1", null, null);
+        SpaceReservationLedger.selectAndReserve(POOL_ID, Collections.singletonList(disk), OWNER_ONE, 100L, candidates -> disk);
+
+        SpaceReservationLedger.release(OWNER_ONE);
+
+        assertThat(SpaceReservationLedger.getEntryCount(), is(entries));
+    }
+
+    @Test
+    public void ignoreEmptyReservations() {
+        SpaceReservationLedger.reserve(POOL_ID, DISK_ID, OWNER_ONE, 0L);
+
+        assertThat(SpaceReservationLedger.getReservationCount(POOL_ID, DISK_ID), is(0));
+        assertThat(SpaceReservationLedger.getReservedBytes(POOL_ID, null), is(0L));
+    }
+
+    @Test
+    public void concurrentSelectionsAreAllReserved() throws Exception {
+        Disk disk1 = new Disk(DISK_ID, null, "ledger-mount-1", null, null);
+        Disk disk2 = new Disk("other-disk", null, "ledger-mount-2", null, null);
+        SpaceReservationLedger.Selection leastReserved = candidates ->
+                SpaceReservationLedger.getReservedBytes(POOL_ID, DISK_ID) <= SpaceReservationLedger.getReservedBytes(POOL_ID, "other-disk") ? disk1 : disk2;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Disk>> selections = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String owner = "concurrent#" + i;
+                selections.add(executor.submit(() -> SpaceReservationLedger.selectAndReserve(POOL_ID,
+                        Arrays.asList(disk1, disk2), owner, 100L, leastReserved)));
+            }
+            for (Future<Disk> selection : selections) {
+                selection.get();
+            }
+
+            assertThat(SpaceReservationLedger.getReservedBytes(POOL_ID, DISK_ID)
+                    + SpaceReservationLedger.getReservedBytes(POOL_ID, "other-disk"), is(800L));
+        } finally {
+            executor.shutdownNow();
+            for (int i = 0; i < 8; i++) {
+                SpaceReservationLedger.release("concurrent#" + i);
+            }
+        }
+    }
+
+    @Test
+    public void anotherDiskIsSelectedOnceTheSpaceWasReservedMeanwhile() throws Exception {
+        Disk disk1 = new Disk(DISK_ID, null, "ledger-mount-1", null, null);
+        Disk disk2 = new Disk("other-disk", null, "ledger-mount-2", null, null);
+        UsableSpaceSnapshot.put("ledger-mount-1", 150L, 0);
+        UsableSpaceSnapshot.put("ledger-mount-2", 1000L, 0);
+        AtomicBoolean concurrent = new AtomicBoolean(true);
+
+        Disk selected = SpaceReservationLedger.selectAndReserve(POOL_ID, Arrays.asList(disk1, disk2), OWNER_ONE, 100L, candidates -> {
+            if (concurrent.getAndSet(false)) {
+                // another allocation reserves the space of the same disk between the selection and the reservation
+                SpaceReservationLedger.selectAndReserve(POOL_ID, Arrays.asList(disk1, disk2), OWNER_TWO, 100L, c -> disk1);
+            }
+            return candidates.get(0);
+        });
+
+        assertThat(selected, is(disk2));
+        assertThat(SpaceReservationLedger.getReservedBytesByOwner(POOL_ID, DISK_ID), is(Collections.singletonMap(OWNER_TWO, 100L)));
+        assertThat(SpaceReservationLedger.getReservedBytesByOwner(POOL_ID, "other-disk"), is(Collections.singletonMap(OWNER_ONE, 100L)));
+    }
+
+    @Test
+    public void failWhenNoDiskHasSpaceLeft() throws Exception {
+        Disk disk = new Disk(DISK_ID, null, "ledger-mount-1", null, null);
+        UsableSpaceSnapshot.put("ledger-mount-1", 150L, 0);
+        AtomicBoolean concurrent = new AtomicBoolean(true);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage("None of the Disks of the Disk Pool 'ledger-pool' has enough space left");
+        SpaceReservationLedger.selectAndReserve(POOL_ID, Collections.singletonList(disk), OWNER_ONE, 100L, candidates -> {
+            if (concurrent.getAndSet(false)) {
+                SpaceReservationLedger.selectAndReserve(POOL_ID, Collections.singletonList(disk), OWNER_TWO, 100L, c -> disk);
+            }
+            return disk;
+        });
+    }
+
+    @Test
+    public void selectWithoutReservation() throws Exception {
+        Disk disk = new Disk(DISK_ID, null, "ledger-mount-1", null, null);
+
+        assertThat(SpaceReservationLedger.selectAndReserve(POOL_ID, Collections.singletonList(disk), OWNER_ONE, 0L,
+                candidates -> disk), is(disk));
+        assertThat(SpaceReservationLedger.getReservationCount(POOL_ID, DISK_ID), is(0));
+    }
+}
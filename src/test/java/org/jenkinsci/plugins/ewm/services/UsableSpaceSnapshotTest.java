@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link UsableSpaceSnapshot}.
+ */
+public class UsableSpaceSnapshotTest {
+
+    private static final long FAKE_USABLE_SPACE = 42L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        UsableSpaceSnapshot.clear();
+    }
+
+    @Test
+    public void serveRecentEntry() throws Exception {
+        String mountPoint = tmp.newFolder("disk").getPath();
+        UsableSpaceSnapshot.put(mountPoint, FAKE_USABLE_SPACE, 0);
+
+        assertThat(UsableSpaceSnapshot.getUsableSpace(mountPoint, false), is(FAKE_USABLE_SPACE));
+    }
+
+    @Test
+    public void readStaleEntryAgain() throws Exception {
+        String mountPoint = tmp.newFolder("disk").getPath();
+        UsableSpaceSnapshot.put(mountPoint, FAKE_USABLE_SPACE, UsableSpaceSnapshot.MAX_AGE + 1);
+
+        assertThat(UsableSpaceSnapshot.getUsableSpace(mountPoint, false), not(FAKE_USABLE_SPACE));
+        // the fresh value replaced the stale entry
+        assertThat(UsableSpaceSnapshot.getUsableSpace(mountPoint, false), not(FAKE_USABLE_SPACE));
+    }
+
+    @Test
+    public void forceFreshBypassesRecentEntry() throws Exception {
+        String mountPoint = tmp.newFolder("disk").getPath();
+        UsableSpaceSnapshot.put(mountPoint, FAKE_USABLE_SPACE, 0);
+
+        assertThat(UsableSpaceSnapshot.getUsableSpace(mountPoint, true), not(FAKE_USABLE_SPACE));
+    }
+
+    @Test
+    public void pollDropsRemovedDisks() throws Exception {
+        String kept = tmp.newFolder("kept").getPath();
+        String removed = tmp.newFolder("removed").getPath();
+        UsableSpaceSnapshot.put(removed, FAKE_USABLE_SPACE, 0);
+
+        UsableSpaceSnapshot.poll(Collections.singletonList(new Disk("kept", null, kept, null, null)));
+
+        assertThat(UsableSpaceSnapshot.getUsableSpace(removed, false), not(FAKE_USABLE_SPACE));
+    }
+
+    @Test
+    public void pollRefreshesConfiguredDisks() throws Exception {
+        String mountPoint = tmp.newFolder("disk").getPath();
+        UsableSpaceSnapshot.put(mountPoint, FAKE_USABLE_SPACE, 0);
+
+        UsableSpaceSnapshot.poll(Collections.singletonList(new Disk("disk", null, mountPoint, null, null)));
+
+        assertThat(UsableSpaceSnapshot.getUsableSpace(mountPoint, false), not(FAKE_USABLE_SPACE));
+    }
+}
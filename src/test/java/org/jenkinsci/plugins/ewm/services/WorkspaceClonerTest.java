@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link WorkspaceCloner}.
+ */
+public class WorkspaceClonerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void cloneWithHardLinksAndCopy() throws Exception {
+        Path source = tmp.newFolder("source").toPath();
+        Path readOnly = Files.write(Files.createDirectories(source.resolve("target/classes")).resolve("Foo.class"), bytes("foo"));
+        assumeTrue(readOnly.toFile().setWritable(false, false));
+        Files.write(source.resolve("pom.xml"), bytes("bar"));
+        Files.createSymbolicLink(source.resolve("link"), Paths.get("pom.xml"));
+
+        Path target = tmp.getRoot().toPath().resolve("clones/target");
+        Files.createDirectories(target.getParent());
+        WorkspaceCloner.cloneWithHardLinksAndCopy(source, target);
+
+        Path clonedReadOnly = target.resolve("target/classes/Foo.class");
+        assertThat(Files.isSameFile(clonedReadOnly, readOnly), is(true));
+
+        Path clonedWritable = target.resolve("pom.xml");
+        assertThat(new String(Files.readAllBytes(clonedWritable), StandardCharsets.UTF_8), is("bar"));
+        assertThat(Files.isSameFile(clonedWritable, source.resolve("pom.xml")), is(false));
+
+        assertThat(Files.readSymbolicLink(target.resolve("link")), is(Paths.get("pom.xml")));
+    }
+
+    @Test
+    public void cloneCopiesTheContent() throws Exception {
+        Path source = tmp.newFolder("source").toPath();
+        Files.write(Files.createDirectories(source.resolve("a/b")).resolve("file.txt"), bytes("foo"));
+
+        Path target = tmp.getRoot().toPath().resolve("clones/target");
+        WorkspaceCloner.clone(source, target);
+
+        assertThat(new String(Files.readAllBytes(target.resolve("a/b/file.txt")), StandardCharsets.UTF_8), is("foo"));
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void cloneIntoExistingDirectory() throws Exception {
+        Path source = tmp.newFolder("source").toPath();
+        Path target = tmp.newFolder("target").toPath();
+
+        WorkspaceCloner.clone(source, target);
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,179 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link WorkspaceDeduplicator}.
+ */
+public class WorkspaceDeduplicatorTest {
+
+    private static final long LAST_MODIFIED = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        WorkspaceDeduplicator.clear();
+    }
+
+    @Test
+    public void identicalReadOnlyFilesAreLinked() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path first = write(mountPoint, "job/1/lib/foo.jar", 'a', false);
+        Path second = write(mountPoint, "job/2/lib/foo.jar", 'a', false);
+        Path other = write(mountPoint, "job/2/lib/bar.jar", 'b', false);
+
+        long reclaimed = WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Arrays.asList(
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1"),
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/2")));
+
+        assertThat(reclaimed, is(WorkspaceDeduplicator.MIN_SIZE));
+        assertThat(WorkspaceDeduplicator.getReclaimedBytes("disk"), is(WorkspaceDeduplicator.MIN_SIZE));
+        assertThat(Files.isSameFile(first, second), is(true));
+        assertThat(Files.isSameFile(first, other), is(false));
+    }
+
+    @Test
+    public void writableFilesAreNotLinked() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path first = write(mountPoint, "job/1/foo.txt", 'a', true);
+        Path second = write(mountPoint, "job/2/foo.txt", 'a', true);
+
+        long reclaimed = WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Arrays.asList(
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1"),
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/2")));
+
+        assertThat(reclaimed, is(0L));
+        assertThat(Files.isSameFile(first, second), is(false));
+    }
+
+    @Test
+    public void unusedStoredFilesAreRemoved() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path file = write(mountPoint, "job/1/foo.jar", 'a', false);
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Collections.singletonList(exws));
+        assertThat(((Number) Files.getAttribute(file, "unix:nlink")).intValue(), is(2));
+
+        Files.delete(file);
+        WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Collections.<ExternalWorkspace>emptyList());
+
+        File[] stored = WorkspaceDeduplicator.getStoreDirectory(mountPoint.getPath()).toFile().listFiles();
+        assertThat(stored, arrayWithSize(1));
+        assertThat(stored[0].listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void filesWithDifferentModesAreNotLinked() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path file = write(mountPoint, "job/1/foo.txt", 'a', false);
+        Path script = write(mountPoint, "job/2/foo.sh", 'a', false);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("r-xr-xr-x"));
+
+        long reclaimed = WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Arrays.asList(
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1"),
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/2")));
+
+        assertThat(reclaimed, is(0L));
+        assertThat(Files.isSameFile(file, script), is(false));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file)), is("r--r--r--"));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(script)), is("r-xr-xr-x"));
+    }
+
+    @Test
+    public void storedFileIsANewInode() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path file = write(mountPoint, "job/1/foo.jar", 'a', false);
+        Object inode = Files.getAttribute(file, "unix:ino");
+
+        WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Collections.singletonList(
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1")));
+
+        File[] stored = WorkspaceDeduplicator.getStoreDirectory(mountPoint.getPath()).toFile().listFiles()[0].listFiles();
+        assertThat(stored, arrayWithSize(1));
+        assertThat(Files.isSameFile(stored[0].toPath(), file), is(true));
+        // the workspace's own file isn't shared with the store, it's replaced by a link to the stored copy
+        assertThat(Files.getAttribute(file, "unix:ino"), not(inode));
+        assertThat(Files.getLastModifiedTime(file).toMillis(), is(LAST_MODIFIED));
+    }
+
+    @Test
+    public void modifiedStoredFileIsNotLinked() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path first = write(mountPoint, "job/1/foo.jar", 'a', false);
+        ExternalWorkspace exws1 = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+        WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Collections.singletonList(exws1));
+
+        // the first workspace modifies its linked file in place, and restores its metadata
+        assumeTrue(first.toFile().setWritable(true, true));
+        try (OutputStream out = Files.newOutputStream(first, StandardOpenOption.WRITE)) {
+            out.write('b');
+        }
+        Files.setLastModifiedTime(first, FileTime.fromMillis(LAST_MODIFIED));
+        assumeTrue(first.toFile().setWritable(false, false));
+
+        Path second = write(mountPoint, "job/2/foo.jar", 'a', false);
+        long reclaimed = WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Arrays.asList(exws1,
+                new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/2")));
+
+        assertThat(reclaimed, is(0L));
+        assertThat(Files.isSameFile(first, second), is(false));
+        assertThat(new String(Files.readAllBytes(second), "UTF-8").charAt(0), is('a'));
+    }
+
+    @Test
+    public void activeWorkspacesAreSkipped() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        Path first = write(mountPoint, "job/1/foo.jar", 'a', false);
+        Path second = write(mountPoint, "job/2/foo.jar", 'a', false);
+        ExternalWorkspace active = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/2");
+
+        ActiveWorkspaceCounter.increment("pool", "disk", active.getId());
+        try {
+            long reclaimed = WorkspaceDeduplicator.deduplicate("disk", mountPoint.getPath(), Arrays.asList(
+                    new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1"), active));
+
+            assertThat(reclaimed, is(0L));
+            assertThat(Files.isSameFile(first, second), is(false));
+        } finally {
+            ActiveWorkspaceCounter.decrement("pool", "disk", active.getId());
+        }
+    }
+
+    private static Path write(File mountPoint, String path, char content, boolean writable) throws Exception {
+        File file = new File(mountPoint, path);
+        assertThat(file.getParentFile().isDirectory() || file.getParentFile().mkdirs(), is(true));
+        char[] chars = new char[(int) WorkspaceDeduplicator.MIN_SIZE];
+        Arrays.fill(chars, content);
+        Files.write(file.toPath(), new String(chars).getBytes("UTF-8"));
+        // the recently modified files are skipped, and only the files modified at the same time are linked
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(LAST_MODIFIED));
+        if (!writable) {
+            assumeTrue(file.setWritable(false, false));
+        }
+        return file.toPath();
+    }
+}
@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link WorkspaceDeletionService}.
+ */
+public class WorkspaceDeletionServiceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void deleteWorkspaceTree() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File workspace = new File(mountPoint, "job/1");
+        for (int i = 0; i < 5; i++) {
+            File dir = new File(workspace, "dir" + i + "/nested");
+            assertThat(dir.mkdirs(), is(true));
+            Files.write(new File(dir, "file.txt").toPath(), "foo".getBytes("UTF-8"));
+        }
+        Files.write(new File(workspace, "top.txt").toPath(), "bar".getBytes("UTF-8"));
+
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+        WorkspaceDeletionService.delete(exws).get(1, TimeUnit.MINUTES);
+
+        assertThat(workspace.exists(), is(false));
+        assertThat(new File(mountPoint, "job").isDirectory(), is(true));
+        assertThat(WorkspaceDeletionService.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void deleteMissingWorkspace() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        WorkspaceDeletionService.delete(exws).get(1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void rejectWorkspaceOutsideTheMountPoint() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "../other");
+
+        thrown.expect(IOException.class);
+        WorkspaceDeletionService.delete(exws);
+    }
+
+    @Test
+    public void rejectTheMountPointItself() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), ".");
+
+        thrown.expect(IOException.class);
+        WorkspaceDeletionService.delete(exws);
+    }
+
+    @Test
+    public void pendingDeletionIsRecordedUntilCompleted() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File workspace = new File(mountPoint, "job/1");
+        assertThat(workspace.mkdirs(), is(true));
+
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+        WorkspaceDeletionService.delete(exws).get(1, TimeUnit.MINUTES);
+
+        assertThat(workspace.exists(), is(false));
+        assertThat(new File(mountPoint, WorkspaceDeletionService.PENDING_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void resumeRecordedDeletion() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File workspace = new File(mountPoint, "job/1/nested");
+        assertThat(workspace.mkdirs(), is(true));
+        Files.write(new File(workspace, "file.txt").toPath(), "foo".getBytes("UTF-8"));
+        File pending = new File(mountPoint, WorkspaceDeletionService.PENDING_DIRECTORY);
+        assertThat(pending.mkdir(), is(true));
+        Files.write(new File(pending, "0123456789abcdef0123456789abcdef").toPath(), "job/1".getBytes("UTF-8"));
+
+        assertThat(WorkspaceDeletionService.resume("pool", "disk", mountPoint.getPath()), is(1));
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (pending.listFiles().length > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(new File(mountPoint, "job/1").exists(), is(false));
+        assertThat(pending.listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void dropInvalidRecordedDeletion() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File pending = new File(mountPoint, WorkspaceDeletionService.PENDING_DIRECTORY);
+        assertThat(pending.mkdir(), is(true));
+        Files.write(new File(pending, "0123456789abcdef0123456789abcdef").toPath(), "../other".getBytes("UTF-8"));
+
+        assertThat(WorkspaceDeletionService.resume("pool", "disk", mountPoint.getPath()), is(0));
+        assertThat(pending.listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void refuseWorkspaceInUse() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File workspace = new File(mountPoint, "job/1");
+        assertThat(workspace.mkdirs(), is(true));
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        ActiveWorkspaceCounter.increment("pool", "disk", exws.getId());
+        try {
+            WorkspaceDeletionService.delete(exws);
+            fail("A workspace in use shouldn't be deleted");
+        } catch (AbortException e) {
+            assertThat(workspace.exists(), is(true));
+        } finally {
+            ActiveWorkspaceCounter.decrement("pool", "disk", exws.getId());
+        }
+    }
+
+    @Test
+    public void noStepStartsInWorkspaceBeingDeleted() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        WorkspaceDeletionService.markDeleted(exws);
+        try {
+            assertThat(ActiveWorkspaceCounter.increment("pool", "disk", exws.getId()), is(false));
+            assertThat(ActiveWorkspaceCounter.get("pool", "disk"), is(0));
+        } finally {
+            ActiveWorkspaceCounter.unmarkDeleted(exws.getId());
+        }
+    }
+
+    @Test
+    public void workspaceIsUnmarkedOnceDeleted() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        assertThat(new File(mountPoint, "job/1").mkdirs(), is(true));
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        WorkspaceDeletionService.delete(exws).get(1, TimeUnit.MINUTES);
+
+        assertThat(ActiveWorkspaceCounter.isMarkedDeleted(exws.getId()), is(false));
+    }
+
+    @Test
+    public void workspaceIsUnmarkedIfTheDeletionIsRejected() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "../other");
+
+        try {
+            WorkspaceDeletionService.delete(exws);
+            fail("A workspace outside of the mount point shouldn't be deleted");
+        } catch (IOException e) {
+            assertThat(ActiveWorkspaceCounter.isMarkedDeleted(exws.getId()), is(false));
+        }
+    }
+
+    @Test
+    public void rateLimiterSpacesOutTheOperations() throws Exception {
+        WorkspaceDeletionService.RateLimiter rateLimiter = new WorkspaceDeletionService.RateLimiter(100);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            rateLimiter.acquire();
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(90L));
+    }
+}
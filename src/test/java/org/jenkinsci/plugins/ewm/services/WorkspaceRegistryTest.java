@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.utils.RandomUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WorkspaceRegistry}.
+ */
+public class WorkspaceRegistryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void registerAndLookup() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        ExternalWorkspace exws = workspace("pool", "disk1");
+        registry.register(exws, "folder/job", 3, 42L);
+
+        WorkspaceRegistry.Record record = registry.getRecord(exws.getId());
+        assertThat(record, is(notNullValue()));
+        assertThat(record.getWorkspace().getPathOnDisk(), is(exws.getPathOnDisk()));
+        assertThat(record.getJobFullName(), is("folder/job"));
+        assertThat(record.getBuildNumber(), is(3));
+        assertThat(record.getTimestamp(), is(42L));
+
+        assertThat(registry.getByDiskPool("pool"), hasSize(1));
+        assertThat(registry.getByDisk("pool", "disk1"), hasSize(1));
+        assertThat(registry.getByDisk("pool", "disk2"), hasSize(0));
+        assertThat(registry.getByJob("folder/job"), hasSize(1));
+    }
+
+    @Test
+    public void registerIsIdempotent() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace exws = workspace("pool", "disk1");
+        registry.register(exws, "job", 1, 0L);
+        registry.register(exws, "job", 1, 0L);
+
+        assertThat(registry.getAll(), hasSize(1));
+        assertThat(Files.readAllLines(file.toPath()), hasSize(1));
+    }
+
+    @Test
+    public void reloadReplaysTheLog() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace kept = workspace("pool", "disk1");
+        ExternalWorkspace removed = workspace("pool", "disk2");
+        registry.register(kept, "job", 1, 0L);
+        registry.register(removed, "job", 2, 0L);
+        registry.remove(removed.getId());
+
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        assertThat(reloaded.getRecord(kept.getId()), is(notNullValue()));
+        assertThat(reloaded.getRecord(removed.getId()), is(nullValue()));
+        assertThat(reloaded.getByDisk("pool", "disk2"), hasSize(0));
+        assertThat(reloaded.getByJob("job"), hasSize(1));
+    }
+
+    @Test
+    public void corruptedTrailingLineIsSkipped() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace exws = workspace("pool", "disk1");
+        registry.register(exws, "job", 1, 0L);
+        Files.write(file.toPath(), "{\"op\":\"add\",\"id\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        assertThat(reloaded.getAll(), hasSize(1));
+    }
+
+    @Test
+    public void logIsCompactedWhenMostLinesAreDead() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace kept = workspace("pool", "disk1");
+        registry.register(kept, "job", 1, 0L);
+        for (int i = 0; i < 5; i++) {
+            ExternalWorkspace exws = workspace("pool", "disk1");
+            registry.register(exws, "job", i + 2, 0L);
+            registry.remove(exws.getId());
+        }
+
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        List<WorkspaceRegistry.Record> records = reloaded.getAll();
+        assertThat(records, hasSize(1));
+        long addLines = Files.readAllLines(file.toPath()).stream().filter(line -> line.contains("\"op\":\"add\"")).count();
+        assertThat(addLines, is(1L));
+    }
+
+    @Test
+    public void removedWorkspaceIsNotRegisteredAgain() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace kept = workspace("pool", "disk1");
+        ExternalWorkspace removed = workspace("pool", "disk1");
+        registry.register(kept, "job", 1, 0L);
+        registry.register(removed, "job", 2, 0L);
+        registry.remove(removed.getId());
+        // e.g. imported back from its fingerprint
+        registry.register(removed, "job", 2, 0L);
+
+        assertThat(registry.isRemoved(removed.getId()), is(true));
+        assertThat(registry.getRecord(removed.getId()), is(nullValue()));
+
+        // the tombstone survives the compaction
+        for (int i = 0; i < 5; i++) {
+            ExternalWorkspace exws = workspace("pool", "disk1");
+            registry.register(exws, "job", i + 3, 0L);
+            registry.remove(exws.getId());
+        }
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        assertThat(reloaded.isRemoved(removed.getId()), is(true));
+        assertThat(reloaded.isRemoved(kept.getId()), is(false));
+        reloaded.register(removed, "job", 2, 0L);
+        assertThat(reloaded.getAll(), hasSize(1));
+    }
+
+    @Test
+    public void renamedJobKeepsItsWorkspaces() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace job = workspace("pool", "disk1");
+        ExternalWorkspace nested = workspace("pool", "disk1");
+        ExternalWorkspace sibling = workspace("pool", "disk1");
+        registry.register(job, "folder/job", 1, 0L);
+        registry.register(nested, "folder/sub/job", 1, 0L);
+        registry.register(sibling, "folder-2/job", 1, 0L);
+
+        registry.rename("folder", "renamed");
+
+        assertThat(registry.getByJob("folder/job"), hasSize(0));
+        assertThat(registry.getByJob("renamed/job"), hasSize(1));
+        assertThat(registry.getByJob("renamed/sub/job"), hasSize(1));
+        assertThat(registry.getByJob("folder-2/job"), hasSize(1));
+        assertThat(registry.getRecord(job.getId()).getJobFullName(), is("renamed/job"));
+
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        assertThat(reloaded.getByJob("folder/job"), hasSize(0));
+        assertThat(reloaded.getByJob("renamed/job"), hasSize(1));
+        assertThat(reloaded.getByJob("renamed/sub/job"), hasSize(1));
+        assertThat(reloaded.getRecord(nested.getId()).getBuildNumber(), is(1));
+    }
+
+    @Test
+    public void deletedJobDoesNotLeaveItsWorkspacesToANewJob() throws Exception {
+        File file = tmp.newFile();
+        WorkspaceRegistry registry = new WorkspaceRegistry(file);
+        ExternalWorkspace exws = workspace("pool", "disk1");
+        registry.register(exws, "job", 1, 0L);
+
+        registry.forget("job");
+
+        assertThat(registry.getByJob("job"), hasSize(0));
+        assertThat(registry.getByDisk("pool", "disk1"), hasSize(1));
+        assertThat(registry.getRecord(exws.getId()).getJobFullName(), is(""));
+
+        WorkspaceRegistry reloaded = new WorkspaceRegistry(file);
+        assertThat(reloaded.getByJob("job"), hasSize(0));
+        assertThat(reloaded.getByDisk("pool", "disk1"), hasSize(1));
+    }
+
+    @Test
+    public void rangeScanByCreationTime() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(tmp.newFile());
+        ExternalWorkspace first = workspace(RandomUtil.lowestTimeOrderedId(1000L));
+        ExternalWorkspace second = workspace(RandomUtil.lowestTimeOrderedId(2000L));
+        ExternalWorkspace third = workspace(RandomUtil.lowestTimeOrderedId(3000L));
+        registry.register(third, "job", 3, 3000L);
+        registry.register(first, "job", 1, 1000L);
+        registry.register(second, "job", 2, 2000L);
+
+        List<WorkspaceRegistry.Record> records = registry.getCreatedBetween(1000L, 3000L);
+        assertThat(records, hasSize(2));
+        assertThat(records.get(0).getWorkspace().getId(), is(first.getId()));
+        assertThat(records.get(1).getWorkspace().getId(), is(second.getId()));
+    }
+
+    @Test
+    public void fingerprintId() {
+        assertThat(WorkspaceRegistry.fingerprintId(Paths.get("ab", "cd", "0123456789abcdef0123456789ab.xml")),
+                is("abcd0123456789abcdef0123456789ab"));
+        assertThat(WorkspaceRegistry.fingerprintId(Paths.get("ab", "cd", "0123456789abcdef0123456789ab.xml.bak")), is(nullValue()));
+        assertThat(WorkspaceRegistry.fingerprintId(Paths.get("ab", "0123456789abcdef0123456789abcd.xml")), is(nullValue()));
+    }
+
+    private static ExternalWorkspace workspace(String id) {
+        return new ExternalWorkspace(id, "pool", "disk1", "mounting-point", "path");
+    }
+
+    private static ExternalWorkspace workspace(String diskPoolId, String diskId) {
+        return new ExternalWorkspace(diskPoolId, diskId, "mounting-point", "path");
+    }
+}
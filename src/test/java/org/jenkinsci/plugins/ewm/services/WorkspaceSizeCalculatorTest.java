@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link WorkspaceSizeCalculator}.
+ */
+public class WorkspaceSizeCalculatorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        WorkspaceSizeCalculator.clear();
+        WorkspaceSizeCalculator.maxCachedDirectories = WorkspaceSizeCalculator.MAX_CACHED_DIRECTORIES;
+    }
+
+    @Test
+    public void measureTree() throws Exception {
+        File root = tmp.newFolder("ws");
+        write(new File(root, "a.txt"), 10);
+        write(new File(root, "dir1/b.txt"), 20);
+        write(new File(root, "dir1/dir2/c.txt"), 30);
+
+        assertThat(WorkspaceSizeCalculator.measure(root.toPath()), is(60L));
+    }
+
+    @Test
+    public void measureMissingDirectory() throws Exception {
+        assertThat(WorkspaceSizeCalculator.measure(new File(tmp.getRoot(), "missing").toPath()), is(0L));
+    }
+
+    @Test
+    public void unchangedDirectoriesAreCached() throws Exception {
+        File root = tmp.newFolder("ws");
+        write(new File(root, "dir1/b.txt"), 20);
+        write(new File(root, "dir2/c.txt"), 30);
+        makeOld(root.toPath());
+        makeOld(new File(root, "dir1").toPath());
+        makeOld(new File(root, "dir2").toPath());
+
+        assertThat(WorkspaceSizeCalculator.measure(root.toPath()), is(50L));
+        assertThat(WorkspaceSizeCalculator.getCachedDirectoryCount(), is(3));
+
+        // adding a file changes the modification time of its directory only
+        write(new File(root, "dir2/d.txt"), 40);
+        assertThat(WorkspaceSizeCalculator.measure(root.toPath()), is(90L));
+
+        WorkspaceSizeCalculator.forget(root.toPath());
+        assertThat(WorkspaceSizeCalculator.getCachedDirectoryCount(), is(0));
+    }
+
+    @Test
+    public void cachedDirectoriesAreBounded() throws Exception {
+        WorkspaceSizeCalculator.maxCachedDirectories = 2;
+        File root = tmp.newFolder("ws");
+        write(new File(root, "dir1/b.txt"), 20);
+        write(new File(root, "dir2/c.txt"), 30);
+        write(new File(root, "dir3/d.txt"), 40);
+        makeOld(root.toPath());
+        makeOld(new File(root, "dir1").toPath());
+        makeOld(new File(root, "dir2").toPath());
+        makeOld(new File(root, "dir3").toPath());
+
+        assertThat(WorkspaceSizeCalculator.measure(root.toPath()), is(90L));
+        assertThat(WorkspaceSizeCalculator.getCachedDirectoryCount(), is(2));
+        // the evicted directories are listed again
+        assertThat(WorkspaceSizeCalculator.measure(root.toPath()), is(90L));
+    }
+
+    @Test
+    public void storeWorkspaceSize() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        write(new File(mountPoint, "job/1/a.txt"), 10);
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        assertThat(WorkspaceSizeCalculator.measure(exws), is(10L));
+        assertThat(WorkspaceSizeCalculator.getSize(exws.getId()), is(notNullValue()));
+        assertThat(WorkspaceSizeCalculator.getSize(exws.getId()).getBytes(), is(10L));
+    }
+
+    @Test
+    public void storeFailedMeasurement() throws Exception {
+        // the workspace path goes through a regular file, so it can't be walked
+        File mountPoint = tmp.newFile("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        try {
+            WorkspaceSizeCalculator.measure(exws);
+            fail("The measurement failure should be propagated");
+        } catch (IOException e) {
+            assertThat(WorkspaceSizeCalculator.getSize(exws.getId()), is(notNullValue()));
+            assertThat(WorkspaceSizeCalculator.getSize(exws.getId()).getBytes(), is(0L));
+        }
+    }
+
+    private static void write(File file, int bytes) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[bytes]);
+    }
+
+    private static void makeOld(Path directory) throws Exception {
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+    }
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WorkspaceSizeHistory}.
+ */
+public class WorkspaceSizeHistoryTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        WorkspaceSizeHistory.clear();
+    }
+
+    @Test
+    public void noPredictionWithoutHistory() {
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("job", "pool"), is(0L));
+    }
+
+    @Test
+    public void predictConstantSize() {
+        for (int i = 0; i < 5; i++) {
+            WorkspaceSizeHistory.record("job", "pool", 100 * MEGABYTE);
+        }
+
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("job", "pool"), is(100L));
+    }
+
+    @Test
+    public void predictionCoversVaryingSizes() {
+        WorkspaceSizeHistory.record("job", "pool", 100 * MEGABYTE);
+        WorkspaceSizeHistory.record("job", "pool", 200 * MEGABYTE);
+        WorkspaceSizeHistory.record("job", "pool", 100 * MEGABYTE);
+        WorkspaceSizeHistory.record("job", "pool", 200 * MEGABYTE);
+
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("job", "pool"), greaterThan(200L));
+    }
+
+    @Test
+    public void historyIsKeptPerJobAndDiskPool() {
+        WorkspaceSizeHistory.record("job", "pool", 100 * MEGABYTE);
+
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("job", "other-pool"), is(0L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("other-job", "pool"), is(0L));
+    }
+
+    @Test
+    public void historyFollowsRenamedJobsAndFolders() {
+        WorkspaceSizeHistory.record("job", "pool", 100 * MEGABYTE);
+        WorkspaceSizeHistory.record("folder/job", "pool", 200 * MEGABYTE);
+        WorkspaceSizeHistory.record("jobs", "pool", 300 * MEGABYTE);
+
+        assertThat(WorkspaceSizeHistory.rename("job", "renamed"), is(true));
+        assertThat(WorkspaceSizeHistory.rename("folder", "other-folder"), is(true));
+
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("job", "pool"), is(0L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("renamed", "pool"), is(100L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("folder/job", "pool"), is(0L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("other-folder/job", "pool"), is(200L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("jobs", "pool"), is(300L));
+    }
+
+    @Test
+    public void historyOfDeletedFolderIsForgotten() {
+        WorkspaceSizeHistory.record("folder/job", "pool", 100 * MEGABYTE);
+        WorkspaceSizeHistory.record("folder-job", "pool", 100 * MEGABYTE);
+
+        assertThat(WorkspaceSizeHistory.forget("folder"), is(true));
+
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("folder/job", "pool"), is(0L));
+        assertThat(WorkspaceSizeHistory.predictMegaBytes("folder-job", "pool"), is(100L));
+    }
+
+    @Test
+    public void measureDirectory() throws Exception {
+        File workspace = tmp.newFolder("workspace");
+        Files.write(new File(workspace, "a").toPath(), new byte[10]);
+        File nested = new File(workspace, "nested");
+        assertThat(nested.mkdir(), is(true));
+        Files.write(new File(nested, "b").toPath(), new byte[32]);
+
+        assertThat(WorkspaceSizeCalculator.measure(workspace.toPath()), is(42L));
+    }
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.ewm.services;
+
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WorkspaceTrash}.
+ */
+public class WorkspaceTrashTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void moveToTrashAndPurge() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File workspace = new File(mountPoint, "job/1");
+        assertThat(workspace.mkdirs(), is(true));
+        Files.write(new File(workspace, "file.txt").toPath(), "foo".getBytes("UTF-8"));
+
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+        WorkspaceTrash.moveToTrash(exws).get(1, TimeUnit.MINUTES);
+
+        assertThat(workspace.exists(), is(false));
+        File[] trashed = new File(mountPoint, WorkspaceTrash.TRASH_DIRECTORY).listFiles();
+        assertThat(trashed, arrayWithSize(0));
+    }
+
+    @Test
+    public void purgeLeftovers() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        File leftover = new File(mountPoint, WorkspaceTrash.TRASH_DIRECTORY + "/id.1/nested");
+        assertThat(leftover.mkdirs(), is(true));
+        Files.write(new File(leftover, "file.txt").toPath(), "foo".getBytes("UTF-8"));
+
+        assertThat(WorkspaceTrash.purge("pool", "disk", mountPoint.getPath()), is(1));
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (WorkspaceDeletionService.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(new File(mountPoint, WorkspaceTrash.TRASH_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void moveMissingWorkspace() throws Exception {
+        File mountPoint = tmp.newFolder("mount");
+        ExternalWorkspace exws = new ExternalWorkspace("pool", "disk", mountPoint.getPath(), "job/1");
+
+        WorkspaceTrash.moveToTrash(exws).get(1, TimeUnit.MINUTES);
+
+        assertThat(new File(mountPoint, WorkspaceTrash.TRASH_DIRECTORY).exists(), is(false));
+    }
+}
@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DiskPoolsSnapshot}.
+ */
+public class DiskPoolsSnapshotTest {
+
+    @Test
+    public void lookupByDiskPoolId() {
+        DiskPool diskPool1 = TestUtil.createDiskPool();
+        DiskPool diskPool2 = TestUtil.createDiskPool();
+        DiskPoolsSnapshot snapshot = new DiskPoolsSnapshot(Arrays.asList(diskPool1, diskPool2));
+
+        assertThat(snapshot.getDiskPool(diskPool1.getDiskPoolId()), is(diskPool1));
+        assertThat(snapshot.getDiskPool(diskPool2.getDiskPoolId()), is(diskPool2));
+        assertThat(snapshot.getDiskPool("missing"), nullValue());
+    }
+
+    @Test
+    public void isNotAffectedByLaterChangesOfTheList() {
+        DiskPool diskPool1 = TestUtil.createDiskPool();
+        DiskPool diskPool2 = TestUtil.createDiskPool();
+        List<DiskPool> diskPools = new ArrayList<>(Arrays.asList(diskPool1));
+        DiskPoolsSnapshot snapshot = new DiskPoolsSnapshot(diskPools);
+
+        diskPools.add(diskPool2);
+
+        assertThat(snapshot.getDiskPools(), contains(diskPool1));
+        assertThat(snapshot.getDiskPool(diskPool2.getDiskPoolId()), nullValue());
+    }
+
+    @Test
+    public void newerSnapshotsHaveHigherVersions() {
+        DiskPoolsSnapshot first = new DiskPoolsSnapshot(null);
+        DiskPoolsSnapshot second = new DiskPoolsSnapshot(null);
+
+        assertThat(first.getDiskPools(), empty());
+        assertThat(second.getVersion(), greaterThan(first.getVersion()));
+    }
+
+    @Test
+    public void cursorsAreKeptPerDiskPoolAndDroppedWithTheSnapshot() {
+        DiskPool diskPool1 = TestUtil.createDiskPool();
+        DiskPool diskPool2 = TestUtil.createDiskPool();
+        DiskPoolsSnapshot snapshot = new DiskPoolsSnapshot(Arrays.asList(diskPool1, diskPool2));
+
+        assertThat(snapshot.getCursor(diskPool1.getDiskPoolId()), is(notNullValue()));
+        assertThat(snapshot.getCursor(diskPool1.getDiskPoolId()), is(sameInstance(snapshot.getCursor(diskPool1.getDiskPoolId()))));
+        assertThat(snapshot.getCursor(diskPool1.getDiskPoolId()), is(not(sameInstance(snapshot.getCursor(diskPool2.getDiskPoolId())))));
+        assertThat(snapshot.getCursor("missing"), nullValue());
+
+        DiskPoolsSnapshot next = new DiskPoolsSnapshot(Arrays.asList(diskPool1, diskPool2));
+        assertThat(next.getCursor(diskPool1.getDiskPoolId()), is(not(sameInstance(snapshot.getCursor(diskPool1.getDiskPoolId())))));
+    }
+}
@@ -1,8 +1,13 @@
 package org.jenkinsci.plugins.ewm.steps;
 
+import hudson.model.Fingerprint;
 import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.actions.ExwsAllocateActionImpl;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
 import org.jenkinsci.plugins.ewm.definitions.DiskPool;
+import org.jenkinsci.plugins.ewm.facets.WorkspaceBrowserFacet;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.jenkinsci.plugins.ewm.services.FingerprintJournal;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.After;
 import org.junit.BeforeClass;
@@ -14,13 +19,17 @@ import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 
 import static hudson.model.Result.FAILURE;
 import static java.lang.String.format;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.jenkinsci.plugins.ewm.TestUtil.*;
+import static org.junit.Assert.assertThat;
 
 /**
  * Unit tests for {@link ExwsAllocateStep}.
@@ -134,6 +143,37 @@ public class ExwsAllocateStepTest {
         j.assertLogContains(format("The path on Disk is: %s", Paths.get(allocatedDisk.getPhysicalPathOnDisk(), upstreamRun.getParent().getFullDisplayName(), Integer.toString(upstreamRun.getNumber()))), upstreamRun);
     }
 
+    @Test
+    public void workspaceFingerprintSurvivesFlushAndReload() throws Exception {
+        Disk disk = new Disk(DISK_ID_ONE, "name", pathToDisk1.getPath(), "path", null);
+        setUpDiskPool(disk);
+        createUpstreamJobAndRun();
+        j.assertBuildStatusSuccess(upstreamRun);
+
+        ExternalWorkspace exws = upstreamRun.getAction(ExwsAllocateActionImpl.class).getAllocatedWorkspaces().get(0);
+        FingerprintJournal.flush();
+        assertThat(FingerprintJournal.getPendingCount(), is(0));
+
+        // read from the disk, not from the fingerprint map cache
+        Fingerprint fingerprint = Fingerprint.load(exws.getId());
+        assertThat(fingerprint, notNullValue());
+        WorkspaceBrowserFacet facet = fingerprint.getFacet(WorkspaceBrowserFacet.class);
+        assertThat(facet, notNullValue());
+        assertThat(facet.getWorkspace().getCompleteWorkspacePath(), is(exws.getCompleteWorkspacePath()));
+    }
+
+    @Test
+    public void cloneWithoutSelectedRun() throws Exception {
+        Disk disk = new Disk(DISK_ID_ONE, "name", pathToDisk1.getPath(), "path", null);
+        setUpDiskPool(disk);
+        upstreamRun = createWorkflowJobAndRun(format("exwsAllocate diskPoolId: '%s', clone: true", DISK_POOL_ID));
+
+        j.assertBuildStatusSuccess(upstreamRun);
+        j.assertLogContains("WARNING: The 'clone' parameter was provided without the 'selectedRun' parameter. " +
+                "The 'clone' parameter will be ignored. The step will allocate a new workspace.", upstreamRun);
+        j.assertLogNotContains("Cloned the workspace", upstreamRun);
+    }
+
     /* ##### Tests for the downstream Job ###### */
 
     @Test
@@ -180,6 +220,36 @@ public class ExwsAllocateStepTest {
         j.assertLogContains(format("The path on Disk is: %s", Paths.get(disk.getPhysicalPathOnDisk(), upstreamName, Integer.toString(upstreamRun.getNumber()))), downstreamRun);
     }
 
+    @Test
+    public void cloneWorkspaceInDownstreamJob() throws Exception {
+        Disk disk = new Disk(DISK_ID_ONE, "name", pathToDisk1.getPath(), "path", null);
+        setUpDiskPool(disk);
+        createUpstreamJobAndRun();
+        j.assertBuildStatusSuccess(upstreamRun);
+
+        ExternalWorkspace upstream = upstreamRun.getAction(ExwsAllocateActionImpl.class).getAllocatedWorkspaces().get(0);
+        File upstreamFile = new File(upstream.getCompleteWorkspacePath(), "foo.txt");
+        assertThat(upstreamFile.getParentFile().isDirectory() || upstreamFile.getParentFile().mkdirs(), is(true));
+        Files.write(upstreamFile.toPath(), "foo".getBytes("UTF-8"));
+
+        downstreamRun = createWorkflowJobAndRun(format("" +
+                "def run = selectRun job: '%s' \n" +
+                "exwsAllocate selectedRun: run, clone: true", upstreamRun.getParent().getName()));
+
+        j.assertBuildStatusSuccess(downstreamRun);
+        j.assertLogContains("Cloned the workspace of the selected run into", downstreamRun);
+        String downstreamPath = Paths.get(disk.getPhysicalPathOnDisk(), downstreamRun.getParent().getFullName(),
+                Integer.toString(downstreamRun.getNumber())).toString();
+        j.assertLogContains(format("The path on Disk is: %s", downstreamPath), downstreamRun);
+
+        ExternalWorkspace clone = downstreamRun.getAction(ExwsAllocateActionImpl.class).getAllocatedWorkspaces().get(0);
+        assertThat(clone.getPathOnDisk(), is(downstreamPath));
+        File clonedFile = new File(clone.getCompleteWorkspacePath(), "foo.txt");
+        assertThat(new String(Files.readAllBytes(clonedFile.toPath()), "UTF-8"), is("foo"));
+        // the writable files aren't shared with the selected run's workspace
+        assertThat(Files.isSameFile(upstreamFile.toPath(), clonedFile.toPath()), is(false));
+    }
+
     @Test
     public void upstreamJobRegisteredMultipleActions() throws Exception {
         Disk disk = new Disk(DISK_ID_ONE, "name", "mount", "path", null);
@@ -2,7 +2,6 @@ package org.jenkinsci.plugins.ewm.steps;
 
 import hudson.model.Node;
 import hudson.model.queue.QueueTaskFuture;
-import hudson.util.ReflectionUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
 import org.jenkinsci.plugins.ewm.definitions.DiskPool;
@@ -21,7 +20,6 @@ import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
@@ -113,6 +111,26 @@ public class ExwsStepTest {
         j.assertLogContains(String.format("No Disk Pool Ref ID matching '%s' was found in the External Workspace Template config labeled 'linux'", DISK_POOL_ID), run);
     }
 
+    @Test
+    public void templateLabelExpression() throws Exception {
+        setUpTemplates(new Template("linux && !test", Collections.<NodeDiskPool>emptyList()));
+
+        runWorkflowJob(job);
+
+        j.assertBuildStatus(FAILURE, run);
+        j.assertLogContains(String.format("No Disk Pool Ref ID matching '%s' was found in the External Workspace Template config labeled 'linux && !test'", DISK_POOL_ID), run);
+    }
+
+    @Test
+    public void templateLabelIsNotMatchedAsSubstring() throws Exception {
+        setUpTemplates(new Template("lin", Collections.<NodeDiskPool>emptyList()));
+
+        runWorkflowJob(job);
+
+        j.assertBuildStatus(FAILURE, run);
+        j.assertLogContains("There is no External Workspace config defined in Node 'node-one' config", run);
+    }
+
     @Test
     public void missingNodeExternalWorkspaceProperty() throws Exception {
         runWorkflowJob(job);
@@ -235,10 +253,7 @@ public class ExwsStepTest {
 
     private static void setUpTemplates(List<Template> templates) {
         ExwsStep.DescriptorImpl descriptor = (ExwsStep.DescriptorImpl) j.jenkins.getDescriptor(ExwsStep.class);
-
-        Field templatesField = ReflectionUtils.findField(ExwsStep.DescriptorImpl.class, "templates");
-        templatesField.setAccessible(true);
-        ReflectionUtils.setField(templatesField, descriptor, templates);
+        descriptor.setTemplates(templates);
     }
 
     private static WorkflowJob createWorkflowJob() throws IOException {
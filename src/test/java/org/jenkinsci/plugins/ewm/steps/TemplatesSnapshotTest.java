@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.ewm.steps;
+
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+import org.jenkinsci.plugins.ewm.definitions.Template;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link TemplatesSnapshot}.
+ */
+public class TemplatesSnapshotTest {
+
+    @After
+    public void tearDown() {
+        TemplatesSnapshot.maxIndexSize = TemplatesSnapshot.MAX_INDEX_SIZE;
+    }
+
+    @Test
+    public void followDynamicLabels() {
+        Template template = mock(Template.class);
+        when(template.matches(any(Node.class))).thenAnswer(invocation ->
+                ((Node) invocation.getArguments()[0]).getAssignedLabels().contains(new LabelAtom("linux")));
+        TemplatesSnapshot snapshot = new TemplatesSnapshot(Collections.singletonList(template));
+        Node node = mockNode("node", "windows");
+
+        assertThat(snapshot.findTemplate(node), is(nullValue()));
+
+        // the same node, once a label finder assigned it another label
+        Set<LabelAtom> labels = labels("node", "linux");
+        when(node.getAssignedLabels()).thenReturn(labels);
+        assertThat(snapshot.findTemplate(node), is(template));
+    }
+
+    @Test
+    public void indexIsBounded() {
+        TemplatesSnapshot.maxIndexSize = 2;
+        TemplatesSnapshot snapshot = new TemplatesSnapshot(Collections.<Template>emptyList());
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(snapshot.findTemplate(mockNode("node" + i, "linux")), is(nullValue()));
+        }
+
+        assertThat(snapshot.getIndexSize(), is(2));
+    }
+
+    private static Node mockNode(String name, String label) {
+        Node node = mock(Node.class);
+        when(node.getNodeName()).thenReturn(name);
+        when(node.getLabelString()).thenReturn(label);
+        Set<LabelAtom> labels = labels(name, label);
+        when(node.getAssignedLabels()).thenReturn(labels);
+        return node;
+    }
+
+    private static Set<LabelAtom> labels(String... names) {
+        Set<LabelAtom> labels = new HashSet<>();
+        for (String name : Arrays.asList(names)) {
+            labels.add(new LabelAtom(name));
+        }
+        return labels;
+    }
+}
@@ -7,6 +7,8 @@ import org.jenkinsci.plugins.ewm.TestUtil;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
 import org.jenkinsci.plugins.ewm.definitions.DiskPool;
 import org.jenkinsci.plugins.ewm.nodes.NodeDisk;
+import org.jenkinsci.plugins.ewm.services.WorkspaceDeletionService;
+import org.jenkinsci.plugins.ewm.services.WorkspaceTrash;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.After;
 import org.junit.Before;
@@ -22,6 +24,7 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 import static org.apache.commons.io.FileUtils.listFiles;
@@ -57,14 +60,15 @@ public class WorkspaceCleanupTest {
     public static void setUp() throws Exception {
         node1 = j.createSlave(Label.get("linux"));
         node2 = j.createSlave(Label.get("test"));
-        Disk disk = new Disk(DISK_ID_ONE, null, "mount-from-master", PATH_ON_DISK, null);
-        DiskPool diskPool = new DiskPool(DISK_POOL_ID, null, null, null, null, null, Collections.singletonList(disk));
-        setUpDiskPools(j.jenkins, diskPool);
     }
 
     @Before
     public void setUpFolder() throws IOException {
         mountToDisk = tmp.newFolder("mount-to-disk");
+        // the agents run on the same machine, so the Disk has the same mounting point on the master and on the agents
+        Disk disk = new Disk(DISK_ID_ONE, null, mountToDisk.getPath(), PATH_ON_DISK, null);
+        DiskPool diskPool = new DiskPool(DISK_POOL_ID, null, null, null, null, null, Collections.singletonList(disk));
+        setUpDiskPools(j.jenkins, diskPool);
         NodeDisk nodeDisk = new NodeDisk(DISK_ID_ONE, mountToDisk.getPath());
         addExternalWorkspaceNodeProperty(node1, DISK_POOL_ID, nodeDisk);
         addExternalWorkspaceNodeProperty(node2, DISK_POOL_ID, nodeDisk);
@@ -177,6 +181,84 @@ public class WorkspaceCleanupTest {
         assertThat(listFiles(tmp.getRoot(), nameFileFilter("foo.txt"), directoryFileFilter()), hasSize(0));
     }
 
+    @Test
+    public void exwsCleanupDeletesWorkspaceInTheBackground() throws Exception {
+        WorkflowRun run = createWorkflowJobAndRun(format("" +
+                "def extWorkspace = exwsAllocate diskPoolId: '%s' \n" +
+                "node ('linux') { \n" +
+                "	exws (extWorkspace) { \n" +
+                "		writeFile file: 'foo.txt', text: 'bar' \n" +
+                "	} \n" +
+                "} \n" +
+                "exwsCleanup extWorkspace", DISK_POOL_ID));
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Scheduled the deletion of the workspace", run);
+
+        awaitDeletions();
+        assertThat(listFiles(tmp.getRoot(), nameFileFilter("foo.txt"), directoryFileFilter()), hasSize(0));
+        assertThat(new File(mountToDisk, WorkspaceDeletionService.PENDING_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void exwsCleanupMovesWorkspaceToTheTrash() throws Exception {
+        WorkflowRun run = createWorkflowJobAndRun(format("" +
+                "def extWorkspace = exwsAllocate diskPoolId: '%s' \n" +
+                "node ('linux') { \n" +
+                "	exws (extWorkspace) { \n" +
+                "		writeFile file: 'foo.txt', text: 'bar' \n" +
+                "	} \n" +
+                "} \n" +
+                "exwsCleanup externalWorkspace: extWorkspace, trash: true", DISK_POOL_ID));
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("to the trash", run);
+
+        awaitDeletions();
+        assertThat(listFiles(tmp.getRoot(), nameFileFilter("foo.txt"), directoryFileFilter()), hasSize(0));
+        assertThat(new File(mountToDisk, WorkspaceTrash.TRASH_DIRECTORY).listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void exwsCleanupRefusesWorkspaceInUse() throws Exception {
+        WorkflowRun run = createWorkflowJobAndRun(format("" +
+                "def extWorkspace = exwsAllocate diskPoolId: '%s' \n" +
+                "node ('linux') { \n" +
+                "	exws (extWorkspace) { \n" +
+                "		writeFile file: 'foo.txt', text: 'bar' \n" +
+                "		exwsCleanup extWorkspace \n" +
+                "	} \n" +
+                "}", DISK_POOL_ID));
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("is in use by 1 running exws step(s), it won't be deleted", run);
+        assertThat(listFiles(tmp.getRoot(), nameFileFilter("foo.txt"), directoryFileFilter()), hasSize(1));
+    }
+
+    @Test
+    public void exwsCleanupRefusesWorkspaceOfUpstreamBuild() throws Exception {
+        WorkflowRun upstreamRun = createWorkflowJobAndRun(format("" +
+                "def extWorkspace = exwsAllocate diskPoolId: '%s' \n" +
+                "node ('linux') { \n" +
+                "	exws (extWorkspace) { \n" +
+                "		writeFile file: 'foo.txt', text: 'foobar' \n" +
+                "	} \n" +
+                "}", DISK_POOL_ID));
+        j.assertBuildStatusSuccess(upstreamRun);
+
+        WorkflowRun downstreamRun = createWorkflowJobAndRun(format("" +
+                "def run = selectRun '%s' \n" +
+                "def extWorkspace = exwsAllocate selectedRun: run \n" +
+                "exwsCleanup extWorkspace", upstreamRun.getParent().getFullName()));
+        j.assertBuildStatus(Result.FAILURE, downstreamRun);
+        j.assertLogContains("wasn't allocated by this build, it won't be deleted", downstreamRun);
+        assertThat(listFiles(tmp.getRoot(), nameFileFilter("foo.txt"), directoryFileFilter()), hasSize(1));
+    }
+
+    private static void awaitDeletions() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (WorkspaceDeletionService.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
     private static WorkflowRun createWorkflowJobAndRun(String script) throws Exception {
         return TestUtil.createWorkflowJobAndRun(j.jenkins, script);
     }
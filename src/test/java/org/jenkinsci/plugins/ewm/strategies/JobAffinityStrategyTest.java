@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.actions.ExwsAllocateActionImpl;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.model.ExternalWorkspace;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link JobAffinityStrategy}.
+ */
+public class JobAffinityStrategyTest {
+
+    private JobAffinityStrategy strategy;
+    private MostUsableSpaceStrategy fallbackStrategy;
+
+    private Disk disk1;
+    private Disk disk2;
+    private List<Disk> disks;
+
+    private Run<?, ?> run;
+    private Run<?, ?> lastSuccessfulBuild;
+
+    @Before
+    public void setUp() throws Exception {
+        strategy = spy(new JobAffinityStrategy());
+        fallbackStrategy = spy(new MostUsableSpaceStrategy());
+        strategy.setFallbackStrategy(fallbackStrategy);
+
+        disk1 = TestUtil.createDisk();
+        disk2 = TestUtil.createDisk();
+        disks = Arrays.asList(disk1, disk2);
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L * 1024 * 1024);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(300L * 1024 * 1024);
+        when(fallbackStrategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L * 1024 * 1024);
+        when(fallbackStrategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(300L * 1024 * 1024);
+
+        run = mock(Run.class);
+        lastSuccessfulBuild = mock(Run.class);
+        Job<?, ?> job = mock(Job.class);
+        doReturn(job).when(run).getParent();
+        doReturn(lastSuccessfulBuild).when(job).getLastSuccessfulBuild();
+    }
+
+    @Test
+    public void reuseDiskOfLastSuccessfulBuild() throws Exception {
+        recordAllocation(disk1);
+
+        Disk allocatedDisk = strategy.allocateDisk(disks, run, TaskListener.NULL);
+        assertThat(allocatedDisk, is(disk1));
+    }
+
+    @Test
+    public void fallbackIfPreviousDiskIsTooSmall() throws Exception {
+        strategy.setEstimatedWorkspaceSize(200L);
+        recordAllocation(disk1);
+
+        Disk allocatedDisk = strategy.allocateDisk(disks, run, TaskListener.NULL);
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void fallbackIfNoPreviousAllocation() throws Exception {
+        Disk allocatedDisk = strategy.allocateDisk(disks, run, TaskListener.NULL);
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void fallbackIfPreviousDiskIsNotInPool() throws Exception {
+        recordAllocation(TestUtil.createDisk());
+
+        Disk allocatedDisk = strategy.allocateDisk(disks, run, TaskListener.NULL);
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void defaultFallbackStrategy() {
+        JobAffinityStrategy jobAffinityStrategy = new JobAffinityStrategy();
+        assertThat(jobAffinityStrategy.getFallbackStrategy(), instanceOf(MostUsableSpaceStrategy.class));
+
+        jobAffinityStrategy.setFallbackStrategy(new JobAffinityStrategy());
+        assertThat(jobAffinityStrategy.getFallbackStrategy(), instanceOf(MostUsableSpaceStrategy.class));
+    }
+
+    private void recordAllocation(Disk disk) {
+        ExwsAllocateActionImpl action = new ExwsAllocateActionImpl();
+        action.addAllocatedWorkspace(new ExternalWorkspace("disk-pool", disk.getDiskId(), disk.getMasterMountPoint(), "path"));
+        doReturn(action).when(lastSuccessfulBuild).getAction(ExwsAllocateActionImpl.class);
+    }
+}
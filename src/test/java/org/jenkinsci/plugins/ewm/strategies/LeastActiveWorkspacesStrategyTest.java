@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.ActiveWorkspaceCounter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.lang.String.format;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link LeastActiveWorkspacesStrategy}.
+ */
+public class LeastActiveWorkspacesStrategyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private LeastActiveWorkspacesStrategy strategy;
+
+    @Before
+    public void setUp() {
+        strategy = spy(new LeastActiveWorkspacesStrategy());
+    }
+
+    @Test
+    public void allocateDiskWithFewestActiveWorkspaces() throws Exception {
+        Disk disk1 = TestUtil.createDisk();
+        Disk disk2 = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(200L);
+
+        ActiveWorkspaceCounter.increment(disk2.getDiskPoolId(), disk2.getDiskId());
+        try {
+            Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+            assertThat(allocatedDisk, is(disk1));
+        } finally {
+            ActiveWorkspaceCounter.decrement(disk2.getDiskPoolId(), disk2.getDiskId());
+        }
+    }
+
+    @Test
+    public void breakTiesWithUsableSpace() throws Exception {
+        Disk disk1 = TestUtil.createDisk();
+        Disk disk2 = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(200L);
+
+        Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void estimatedWorkspaceSizeGreaterThanUsableSpace() throws Exception {
+        long estimatedWorkspaceSize = 200L;
+        strategy.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+        Disk disk = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk)).thenReturn(100000000L);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage(format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize));
+        strategy.allocateDisk(Collections.singletonList(disk));
+    }
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.DiskInfoProvider;
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.providers.NoDiskInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.lang.String.format;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link LowestMetadataLatencyStrategy}.
+ */
+public class LowestMetadataLatencyStrategyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private LowestMetadataLatencyStrategy strategy;
+
+    @Before
+    public void setUp() {
+        strategy = spy(new LowestMetadataLatencyStrategy());
+    }
+
+    @Test
+    public void allocateLowestMetadataLatency() throws Exception {
+        Disk disk1 = TestUtil.createDisk(metadataLatency(2.5));
+        Disk disk2 = TestUtil.createDisk(metadataLatency(0.4));
+        Disk disk3 = TestUtil.createDisk(metadataLatency(1.0));
+
+        Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2, disk3));
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void unknownMetadataLatencyIsNotPreferred() throws Exception {
+        Disk disk1 = TestUtil.createDisk(new NoDiskInfo());
+        Disk disk2 = TestUtil.createDisk(metadataLatency(3.0));
+
+        Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void allocateFirstDiskIfNoInfoIsProvided() throws Exception {
+        Disk disk1 = TestUtil.createDisk(new NoDiskInfo());
+        Disk disk2 = TestUtil.createDisk(new NoDiskInfo());
+
+        Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+        assertThat(allocatedDisk, is(disk1));
+    }
+
+    @Test
+    public void skipDisksWithoutEnoughUsableSpace() throws Exception {
+        strategy.setEstimatedWorkspaceSize(200L);
+        Disk disk1 = TestUtil.createDisk(metadataLatency(0.4));
+        Disk disk2 = TestUtil.createDisk(metadataLatency(3.0));
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100000000L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(300000000L);
+
+        Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+        assertThat(allocatedDisk, is(disk2));
+    }
+
+    @Test
+    public void estimatedWorkspaceSizeGreaterThanUsableSpace() throws Exception {
+        long estimatedWorkspaceSize = 200L;
+        strategy.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+        Disk disk = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk)).thenReturn(100000000L);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage(format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize));
+        strategy.allocateDisk(Collections.singletonList(disk));
+    }
+
+    private static DiskInfoProvider metadataLatency(final double latency) {
+        return new DiskInfoProvider() {
+            @Override
+            public double getMetadataLatency() {
+                return latency;
+            }
+        };
+    }
+}
@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.ewm.strategies;
 import hudson.AbortException;
 import org.jenkinsci.plugins.ewm.TestUtil;
 import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.services.SpaceReservationLedger;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -48,6 +49,24 @@ public class MostUsableSpaceStrategyTest {
         assertThat(allocatedDisk, is(disk2));
     }
 
+    @Test
+    public void subtractReservedSpace() throws Exception {
+        Disk disk1 = TestUtil.createDisk();
+        Disk disk2 = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(200L);
+
+        String owner = "subtractReservedSpace#1";
+        SpaceReservationLedger.reserve(disk2.getDiskPoolId(), disk2.getDiskId(), owner, 150L);
+        try {
+            Disk allocatedDisk = strategy.allocateDisk(Arrays.asList(disk1, disk2));
+            assertThat(allocatedDisk, is(disk1));
+        } finally {
+            SpaceReservationLedger.release(owner);
+        }
+    }
+
     @Test
     public void missingMasterMountPoint() throws Exception {
         Disk disk = new Disk("disk", null, null, null, null);
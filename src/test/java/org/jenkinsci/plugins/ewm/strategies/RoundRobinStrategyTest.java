@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.String.format;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link RoundRobinStrategy}.
+ */
+public class RoundRobinStrategyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private RoundRobinStrategy strategy;
+
+    @Before
+    public void setUp() {
+        strategy = spy(new RoundRobinStrategy());
+    }
+
+    @Test
+    public void rotateThroughDisks() throws Exception {
+        List<Disk> disks = Arrays.asList(TestUtil.createDisk(), TestUtil.createDisk(), TestUtil.createDisk());
+
+        Disk first = strategy.allocateDisk(disks);
+        Disk second = strategy.allocateDisk(disks);
+        Disk third = strategy.allocateDisk(disks);
+
+        assertThat(second, is(disks.get((disks.indexOf(first) + 1) % disks.size())));
+        assertThat(third, is(disks.get((disks.indexOf(first) + 2) % disks.size())));
+        assertThat(strategy.allocateDisk(disks), is(first));
+        verify(strategy, never()).retrieveUsableSpaceInBytes(first);
+    }
+
+    @Test
+    public void keepCursorAcrossStrategyInstances() throws Exception {
+        List<Disk> disks = Arrays.asList(TestUtil.createDisk(), TestUtil.createDisk());
+
+        Disk first = new RoundRobinStrategy().allocateDisk(disks);
+        Disk second = new RoundRobinStrategy().allocateDisk(disks);
+
+        assertThat(second == first, is(false));
+    }
+
+    @Test
+    public void skipDisksWithoutEstimatedWorkspaceSize() throws Exception {
+        strategy.setEstimatedWorkspaceSize(100L);
+        Disk disk1 = TestUtil.createDisk();
+        Disk disk2 = TestUtil.createDisk();
+
+        // ~ 10 MB and ~ 150 MB
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(10000000L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(150000000L);
+
+        List<Disk> disks = Arrays.asList(disk1, disk2);
+        assertThat(strategy.allocateDisk(disks), is(disk2));
+        assertThat(strategy.allocateDisk(disks), is(disk2));
+    }
+
+    @Test
+    public void estimatedWorkspaceSizeGreaterThanUsableSpace() throws Exception {
+        long estimatedWorkspaceSize = 200L;
+        strategy.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+        Disk disk = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk)).thenReturn(100000000L);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage(format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize));
+        strategy.allocateDisk(Arrays.asList(disk));
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.ewm.strategies;
+
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.ewm.TestUtil;
+import org.jenkinsci.plugins.ewm.definitions.Disk;
+import org.jenkinsci.plugins.ewm.providers.UserProvidedDiskInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.lang.String.format;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link WeightedScoreStrategy}.
+ */
+public class WeightedScoreStrategyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private WeightedScoreStrategy strategy;
+
+    @Before
+    public void setUp() {
+        strategy = spy(new WeightedScoreStrategy());
+    }
+
+    @Test
+    public void combineWeightedFactors() throws Exception {
+        Disk disk1 = TestUtil.createDisk(new UserProvidedDiskInfo(10, 1));
+        Disk disk2 = TestUtil.createDisk(new UserProvidedDiskInfo(1, 1));
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(200L);
+
+        // disk2 wins on usable space when the read speed is ignored
+        strategy.setReadSpeedWeight(0);
+        assertThat(strategy.allocateDisk(Arrays.asList(disk1, disk2)), is(disk2));
+
+        // disk1 wins once the read speed weights more than the usable space
+        strategy.setReadSpeedWeight(2);
+        assertThat(strategy.allocateDisk(Arrays.asList(disk1, disk2)), is(disk1));
+    }
+
+    @Test
+    public void printScoreBreakdown() throws Exception {
+        Disk disk1 = TestUtil.createDisk(new UserProvidedDiskInfo(10, 1));
+        Disk disk2 = TestUtil.createDisk(new UserProvidedDiskInfo(1, 1));
+
+        when(strategy.retrieveUsableSpaceInBytes(disk1)).thenReturn(100L);
+        when(strategy.retrieveUsableSpaceInBytes(disk2)).thenReturn(200L);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+        strategy.allocateDisk(Arrays.asList(disk1, disk2), mock(Run.class), listener);
+
+        assertThat(log.toString("UTF-8"), containsString(format("Disk ID '%s' score: 3.000 (usable space: 0.000, read speed: 1.000", disk1.getDiskId())));
+        assertThat(log.toString("UTF-8"), containsString(format("Disk ID '%s' score: 3.000 (usable space: 1.000, read speed: 0.000", disk2.getDiskId())));
+    }
+
+    @Test
+    public void estimatedWorkspaceSizeGreaterThanUsableSpace() throws Exception {
+        long estimatedWorkspaceSize = 200L;
+        strategy.setEstimatedWorkspaceSize(estimatedWorkspaceSize);
+        Disk disk = TestUtil.createDisk();
+
+        when(strategy.retrieveUsableSpaceInBytes(disk)).thenReturn(100000000L);
+
+        thrown.expect(AbortException.class);
+        thrown.expectMessage(format("Couldn't find any Disk with at least %s MB usable space", estimatedWorkspaceSize));
+        strategy.allocateDisk(Collections.singletonList(disk));
+    }
+}
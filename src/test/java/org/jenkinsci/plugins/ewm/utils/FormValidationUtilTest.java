@@ -99,4 +99,26 @@ public class FormValidationUtilTest {
         assertThat(StringUtils.countMatches(formValidation.renderHtml(), NOT_VALID_PARENTHESES), is(1));
         assertThat(StringUtils.countMatches(formValidation.renderHtml(), UNSAFE_SYMBOL_MSG), is(1));
     }
+
+    @Test
+    public void validNonNegativeDouble() {
+        assertThat(FormValidationUtil.validateNonNegativeDouble("0"), is(FormValidation.ok()));
+        assertThat(FormValidationUtil.validateNonNegativeDouble("1.5"), is(FormValidation.ok()));
+    }
+
+    @Test
+    public void notADouble() {
+        @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
+        FormValidation formValidation = FormValidationUtil.validateNonNegativeDouble("foo");
+        assertThat(formValidation.kind, is(FormValidation.Kind.ERROR));
+        assertThat(formValidation.getMessage(), is("Not a double value"));
+    }
+
+    @Test
+    public void negativeDouble() {
+        @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
+        FormValidation formValidation = FormValidationUtil.validateNonNegativeDouble("-1");
+        assertThat(formValidation.kind, is(FormValidation.Kind.ERROR));
+        assertThat(formValidation.getMessage(), is("Not a positive double value"));
+    }
 }
@@ -2,7 +2,10 @@ package org.jenkinsci.plugins.ewm.utils;
 
 import org.junit.Test;
 
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -17,4 +20,31 @@ public class RandomUtilTest {
         String generatedString = RandomUtil.generateRandomHexString(32);
         assertThat(generatedString.length(), is(32));
     }
+
+    @Test
+    public void timeOrderedIdIsHex() {
+        String id = RandomUtil.generateTimeOrderedId();
+        assertThat(id.matches("[0-9a-f]{32}"), is(true));
+    }
+
+    @Test
+    public void timeOrderedIdsSortByCreationTime() {
+        String earlier = RandomUtil.generateTimeOrderedId(1000L);
+        String later = RandomUtil.generateTimeOrderedId(1001L);
+
+        assertThat(earlier.compareTo(later), lessThan(0));
+        assertThat(RandomUtil.getTimestamp(earlier), is(1000L));
+        assertThat(RandomUtil.lowestTimeOrderedId(1000L).compareTo(earlier), not(greaterThan(0)));
+        assertThat(RandomUtil.lowestTimeOrderedId(1001L).compareTo(earlier), greaterThan(0));
+    }
+
+    @Test
+    public void timeOrderedIdsHaveRandomTail() {
+        assertThat(RandomUtil.generateTimeOrderedId(1000L), not(RandomUtil.generateTimeOrderedId(1000L)));
+    }
+
+    @Test
+    public void secureRandomHasItsOwnState() {
+        assertThat(RandomUtil.newSecureRandom().getAlgorithm(), not("NativePRNG"));
+    }
 }